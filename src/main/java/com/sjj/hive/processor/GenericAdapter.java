@@ -0,0 +1,19 @@
+package com.sjj.hive.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记基于反射的UDF/UDAF，编译时由{@link GenericAdapterProcessor}在同一个包下生成名为“类名+Adapter”的GenericUDF/GenericUDAF
+ * 生成的函数与GenericUDFBridge/GenericUDAFBridge选择方法及转换参数的规则一致，但在计算时直接调用对应的方法，不再经过Method.invoke
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenericAdapter {
+}
@@ -0,0 +1,576 @@
+package com.sjj.hive.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 为标记了{@link GenericAdapter}的UDF/UDAF生成对应的GenericUDF/GenericUDAF
+ * UDF生成的函数在初始化时仍通过UDF自身的UDFMethodResolver选择evaluate方法，并使用GenericUDFUtils.ConversionHelper转换参数，
+ * 计算时按选中的方法下标直接调用，避免GenericUDFBridge每行都经过Method.invoke
+ * UDAF生成的函数通过UDAF自身的UDAFEvaluatorResolver选择内部类，再为每个内部类生成直接调用iterate/merge/terminatePartial/terminate的GenericUDAFEvaluator
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@SupportedAnnotationTypes("com.sjj.hive.processor.GenericAdapter")
+public class GenericAdapterProcessor extends AbstractProcessor {
+    private static final String UDF = "org.apache.hadoop.hive.ql.exec.UDF";
+    private static final String UDAF = "org.apache.hadoop.hive.ql.exec.UDAF";
+    private static final String UDAF_EVALUATOR = "org.apache.hadoop.hive.ql.exec.UDAFEvaluator";
+    private static final String DESCRIPTION = "org.apache.hadoop.hive.ql.exec.Description";
+    /**
+     * 生成类名的后缀
+     */
+    private static final String SUFFIX = "Adapter";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenericAdapter.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@GenericAdapter only applies to classes");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            try {
+                if (isSubtype(type, UDF)) {
+                    generateUDF(type);
+                } else if (isSubtype(type, UDAF)) {
+                    generateUDAF(type);
+                } else {
+                    error(type, "@GenericAdapter only applies to subclasses of " + UDF + " or " + UDAF);
+                }
+            } catch (IllegalArgumentException e) {
+                error(type, e.getMessage());
+            } catch (IOException e) {
+                error(type, "Unable to write the adapter of " + type + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 生成UDF对应的GenericUDF
+     *
+     * @param udf   标记的UDF
+     * @throws IOException
+     */
+    private void generateUDF(TypeElement udf) throws IOException {
+        checkInstantiable(udf);
+        List<Call> calls = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(udf))) {
+            if (method.getSimpleName().contentEquals("evaluate") && method.getModifiers().contains(Modifier.PUBLIC)) {
+                calls.add(new Call(method));
+            }
+        }
+        if (calls.isEmpty()) {
+            throw new IllegalArgumentException(udf + " has no public evaluate method");
+        }
+
+        String udfName = udf.getQualifiedName().toString();
+        String adapterName = udf.getSimpleName() + SUFFIX;
+        SourceBuilder source = new SourceBuilder();
+        source.line("package " + packageOf(udf) + ";")
+                .line()
+                .line("import org.apache.hadoop.hive.ql.exec.Description;")
+                .line("import org.apache.hadoop.hive.ql.exec.UDFArgumentException;")
+                .line("import org.apache.hadoop.hive.ql.metadata.HiveException;")
+                .line("import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;")
+                .line("import org.apache.hadoop.hive.ql.udf.generic.GenericUDFUtils;")
+                .line("import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;")
+                .line("import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;")
+                .line("import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;")
+                .line("import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;")
+                .line()
+                .line("import java.lang.reflect.Method;")
+                .line("import java.util.Arrays;")
+                .line()
+                .line("/**")
+                .line(" * 由GenericAdapterProcessor根据{@link " + udfName + "}生成，请勿手动修改")
+                .line(" */")
+                .lines(description(udf))
+                .line("@SuppressWarnings(\"deprecation\")")
+                .open("public class " + adapterName + " extends GenericUDF {")
+                .line("/**")
+                .line(" * 各evaluate方法的参数类型，下标与evaluate中的分支一致")
+                .line(" */")
+                .open("private static final Class<?>[][] PARAMETER_TYPES = {");
+        for (Call call : calls) {
+            source.line("{" + join(call.classLiterals) + "},");
+        }
+        source.close("};")
+                .line()
+                .line("private transient " + udfName + " udf;")
+                .line("/**")
+                .line(" * 初始化时选中的evaluate方法的下标")
+                .line(" */")
+                .line("private transient int method;")
+                .line("private transient GenericUDFUtils.ConversionHelper conversionHelper;")
+                .line("/**")
+                .line(" * 复用的入参数组")
+                .line(" */")
+                .line("private transient Object[] values;")
+                .line()
+                .line("@Override")
+                .open("public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {")
+                .line("udf = new " + udfName + "();")
+                .line("TypeInfo[] typeInfos = new TypeInfo[arguments.length];")
+                .open("for (int i = 0; i < arguments.length; i++) {")
+                .line("typeInfos[i] = TypeInfoUtils.getTypeInfoFromObjectInspector(arguments[i]);")
+                .close("}")
+                .line("// 与GenericUDFBridge相同，由UDF的方法解析器选择evaluate方法")
+                .line("Method evalMethod = udf.getResolver().getEvalMethod(Arrays.asList(typeInfos));")
+                .line("method = -1;")
+                .open("for (int i = 0; i < PARAMETER_TYPES.length; i++) {")
+                .open("if (Arrays.equals(PARAMETER_TYPES[i], evalMethod.getParameterTypes())) {")
+                .line("method = i;")
+                .line("break;")
+                .close("}")
+                .close("}")
+                .open("if (method < 0) {")
+                .line("throw new UDFArgumentException(\"No generated call for \" + evalMethod);")
+                .close("}")
+                .line("conversionHelper = new GenericUDFUtils.ConversionHelper(evalMethod, arguments);")
+                .line("values = new Object[arguments.length];")
+                .line("return ObjectInspectorFactory.getReflectionObjectInspector(evalMethod.getGenericReturnType(),")
+                .line("        ObjectInspectorFactory.ObjectInspectorOptions.JAVA);")
+                .close("}")
+                .line()
+                .line("@Override")
+                .open("public Object evaluate(DeferredObject[] arguments) throws HiveException {")
+                .open("for (int i = 0; i < arguments.length; i++) {")
+                .line("values[i] = arguments[i].get();")
+                .close("}")
+                .line("Object[] parameters = conversionHelper.convertIfNecessary(values);")
+                .open("switch (method) {");
+        for (int i = 0; i < calls.size(); i++) {
+            Call call = calls.get(i);
+            source.line("case " + i + ":").indent();
+            call.write(source, "return udf.", "parameters");
+            source.outdent();
+        }
+        source.line("default:")
+                .line("    throw new HiveException(\"No evaluate method selected\");")
+                .close("}")
+                .close("}")
+                .line()
+                .line("@Override")
+                .open("public String getDisplayString(String[] children) {")
+                .line("return getStandardDisplayString(\"" + displayName(udf) + "\", children);")
+                .close("}")
+                .close("}");
+        write(udf, adapterName, source);
+    }
+
+    /**
+     * 生成UDAF对应的GenericUDAF，每个实现UDAFEvaluator的内部类生成一个GenericUDAFEvaluator
+     *
+     * @param udaf  标记的UDAF
+     * @throws IOException
+     */
+    private void generateUDAF(TypeElement udaf) throws IOException {
+        List<TypeElement> evaluators = new ArrayList<>();
+        for (TypeElement member : ElementFilter.typesIn(udaf.getEnclosedElements())) {
+            if (isSubtype(member, UDAF_EVALUATOR) && member.getModifiers().contains(Modifier.PUBLIC)
+                    && member.getModifiers().contains(Modifier.STATIC)) {
+                checkInstantiable(member);
+                evaluators.add(member);
+            }
+        }
+        if (evaluators.isEmpty()) {
+            throw new IllegalArgumentException(udaf + " has no public static UDAFEvaluator");
+        }
+
+        String udafName = udaf.getQualifiedName().toString();
+        String adapterName = udaf.getSimpleName() + SUFFIX;
+        SourceBuilder source = new SourceBuilder();
+        source.line("package " + packageOf(udaf) + ";")
+                .line()
+                .line("import org.apache.hadoop.hive.ql.exec.Description;")
+                .line("import org.apache.hadoop.hive.ql.exec.UDAFEvaluator;")
+                .line("import org.apache.hadoop.hive.ql.metadata.HiveException;")
+                .line("import org.apache.hadoop.hive.ql.parse.SemanticException;")
+                .line("import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;")
+                .line("import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;")
+                .line("import org.apache.hadoop.hive.ql.udf.generic.GenericUDFUtils;")
+                .line("import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;")
+                .line("import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;")
+                .line("import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;")
+                .line("import org.apache.hive.common.util.ReflectionUtil;")
+                .line()
+                .line("import java.lang.reflect.Method;")
+                .line("import java.util.Arrays;")
+                .line()
+                .line("/**")
+                .line(" * 由GenericAdapterProcessor根据{@link " + udafName + "}生成，请勿手动修改")
+                .line(" */")
+                .lines(description(udaf))
+                .line("@SuppressWarnings(\"deprecation\")")
+                .open("public class " + adapterName + " extends AbstractGenericUDAFResolver {")
+                .line("@Override")
+                .open("public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {")
+                .line("// 与GenericUDAFBridge相同，由UDAF的解析器选择内部类")
+                .line("Class<? extends UDAFEvaluator> evaluatorClass = ReflectionUtil.newInstance(" + udafName + ".class, null)")
+                .line("        .getResolver().getEvaluatorClass(Arrays.asList(parameters));");
+        for (TypeElement evaluator : evaluators) {
+            source.open("if (evaluatorClass == " + evaluator.getQualifiedName() + ".class) {")
+                    .line("return new " + evaluator.getSimpleName() + SUFFIX + "();")
+                    .close("}");
+        }
+        source.line("throw new SemanticException(\"No generated evaluator for \" + evaluatorClass.getName());")
+                .close("}");
+        for (TypeElement evaluator : evaluators) {
+            source.line();
+            generateEvaluator(source, evaluator);
+        }
+        source.close("}");
+        write(udaf, adapterName, source);
+    }
+
+    private void generateEvaluator(SourceBuilder source, TypeElement evaluator) {
+        String evaluatorName = evaluator.getQualifiedName().toString();
+        Call iterate = new Call(findMethod(evaluator, "iterate"));
+        Call merge = new Call(findMethod(evaluator, "merge"));
+        Call terminatePartial = new Call(findMethod(evaluator, "terminatePartial"));
+        Call terminate = new Call(findMethod(evaluator, "terminate"));
+        if (merge.classLiterals.size() != 1) {
+            throw new IllegalArgumentException(evaluatorName + ".merge must take exactly one argument");
+        }
+
+        source.open("public static class " + evaluator.getSimpleName() + SUFFIX + " extends GenericUDAFEvaluator {")
+                .line("/**")
+                .line(" * PARTIAL1及COMPLETE阶段转换iterate的入参，否则转换merge的入参")
+                .line(" */")
+                .line("private transient GenericUDFUtils.ConversionHelper conversionHelper;")
+                .line()
+                .open("static class Agg extends AbstractAggregationBuffer {")
+                .line("final " + evaluatorName + " evaluator = new " + evaluatorName + "();")
+                .close("}")
+                .line()
+                .line("@Override")
+                .open("public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {")
+                .line("super.init(m, parameters);")
+                .line("Method output;")
+                .open("try {")
+                .open("if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {")
+                .line("conversionHelper = new GenericUDFUtils.ConversionHelper(")
+                .line("        " + evaluatorName + ".class.getMethod(" + iterate.lookupArguments() + "), parameters);")
+                .close("} else {")
+                .indent()
+                .line("conversionHelper = new GenericUDFUtils.ConversionHelper(")
+                .line("        " + evaluatorName + ".class.getMethod(" + merge.lookupArguments() + "), parameters);")
+                .close("}")
+                .line("output = m == Mode.PARTIAL1 || m == Mode.PARTIAL2")
+                .line("        ? " + evaluatorName + ".class.getMethod(" + terminatePartial.lookupArguments() + ")")
+                .line("        : " + evaluatorName + ".class.getMethod(" + terminate.lookupArguments() + ");")
+                .close("} catch (NoSuchMethodException e) {")
+                .indent()
+                .line("throw new HiveException(e);")
+                .close("}")
+                .line("return ObjectInspectorFactory.getReflectionObjectInspector(output.getGenericReturnType(),")
+                .line("        ObjectInspectorFactory.ObjectInspectorOptions.JAVA);")
+                .close("}")
+                .line()
+                .line("@Override")
+                .open("public AggregationBuffer getNewAggregationBuffer() throws HiveException {")
+                .line("return new Agg();")
+                .close("}")
+                .line()
+                .line("@Override")
+                .open("public void reset(AggregationBuffer agg) throws HiveException {")
+                .line("((Agg) agg).evaluator.init();")
+                .close("}")
+                .line()
+                .line("@Override")
+                .open("public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {")
+                .line("Object[] converted = conversionHelper.convertIfNecessary(parameters);");
+        iterate.write(source, "((Agg) agg).evaluator.", "converted");
+        source.close("}")
+                .line()
+                .line("@Override")
+                .open("public Object terminatePartial(AggregationBuffer agg) throws HiveException {");
+        terminatePartial.write(source, "return ((Agg) agg).evaluator.", null);
+        source.close("}")
+                .line()
+                .line("@Override")
+                .open("public void merge(AggregationBuffer agg, Object partial) throws HiveException {")
+                .line("Object[] converted = conversionHelper.convertIfNecessary(partial);");
+        merge.write(source, "((Agg) agg).evaluator.", "converted");
+        source.close("}")
+                .line()
+                .line("@Override")
+                .open("public Object terminate(AggregationBuffer agg) throws HiveException {");
+        terminate.write(source, "return ((Agg) agg).evaluator.", null);
+        source.close("}")
+                .close("}");
+    }
+
+    /**
+     * 查找UDAFEvaluator中指定名称的公共方法，与GenericUDAFBridge一样按名称匹配，因此要求方法名称唯一
+     */
+    private ExecutableElement findMethod(TypeElement evaluator, String name) {
+        ExecutableElement found = null;
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(evaluator))) {
+            if (method.getSimpleName().contentEquals(name) && method.getModifiers().contains(Modifier.PUBLIC)) {
+                if (null != found) {
+                    throw new IllegalArgumentException(evaluator + " has more than one public " + name + " method");
+                }
+                found = method;
+            }
+        }
+        if (null == found) {
+            throw new IllegalArgumentException(evaluator + " has no public " + name + " method");
+        }
+        return found;
+    }
+
+    /**
+     * 生成的代码直接通过new创建实例，因此要求存在非私有的无参构造函数
+     */
+    private void checkInstantiable(TypeElement type) {
+        checkAccessible(type.asType());
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException(type + " must have a non-private no-argument constructor");
+    }
+
+    /**
+     * 生成的代码需要引用入参类型进行强制类型转换，因此类型及其外部类都不能是私有的
+     */
+    private void checkAccessible(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            checkAccessible(((ArrayType) type).getComponentType());
+            return;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return;
+        }
+        Element element = ((DeclaredType) type).asElement();
+        while (element instanceof TypeElement) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new IllegalArgumentException(element + " must not be private to be used by the generated adapter");
+            }
+            element = element.getEnclosingElement();
+        }
+    }
+
+    /**
+     * 复制原函数的@Description，使DESCRIBE FUNCTION的输出保持一致
+     */
+    private List<String> description(TypeElement type) {
+        List<String> lines = new ArrayList<>();
+        for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            if (!((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(DESCRIPTION)) {
+                continue;
+            }
+            lines.add("@Description(");
+            List<? extends Map.Entry<? extends ExecutableElement, ? extends AnnotationValue>> entries =
+                    new ArrayList<>(annotation.getElementValues().entrySet());
+            for (int i = 0; i < entries.size(); i++) {
+                Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry = entries.get(i);
+                lines.add("        " + entry.getKey().getSimpleName() + " = " + entry.getValue()
+                        + (i < entries.size() - 1 ? "," : ""));
+            }
+            lines.add(")");
+        }
+        return lines;
+    }
+
+    /**
+     * @return  explain中显示的函数名称，优先使用@Description中的名称
+     */
+    private String displayName(TypeElement type) {
+        for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            if (!((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(DESCRIPTION)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : annotation.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("name")) {
+                    return String.valueOf(entry.getValue().getValue());
+                }
+            }
+        }
+        return type.getSimpleName().toString();
+    }
+
+    private String packageOf(TypeElement type) {
+        return processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    }
+
+    private boolean isSubtype(TypeElement type, String superName) {
+        TypeElement superType = processingEnv.getElementUtils().getTypeElement(superName);
+        return null != superType && processingEnv.getTypeUtils().isSubtype(
+                processingEnv.getTypeUtils().erasure(type.asType()),
+                processingEnv.getTypeUtils().erasure(superType.asType()));
+    }
+
+    private void write(TypeElement origin, String simpleName, SourceBuilder source) throws IOException {
+        Writer writer = processingEnv.getFiler().createSourceFile(packageOf(origin) + "." + simpleName, origin).openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static String join(List<String> parts) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(parts.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 对一个方法的直接调用，记录参数的类字面量及强制转换的类型
+     */
+    private class Call {
+        private final String name;
+        private final List<String> classLiterals = new ArrayList<>();
+        private final List<String> castTypes = new ArrayList<>();
+        /**
+         * 方法声明了异常时，生成的调用需要将其包装为HiveException
+         */
+        private final boolean throwsException;
+
+        Call(ExecutableElement method) {
+            name = method.getSimpleName().toString();
+            for (VariableElement parameter : method.getParameters()) {
+                TypeMirror type = processingEnv.getTypeUtils().erasure(parameter.asType());
+                checkAccessible(type);
+                classLiterals.add(type + ".class");
+                castTypes.add(type.getKind().isPrimitive()
+                        ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString()
+                        : type.toString());
+            }
+            throwsException = !method.getThrownTypes().isEmpty();
+        }
+
+        /**
+         * @return  Class.getMethod的实参
+         */
+        String lookupArguments() {
+            List<String> arguments = new ArrayList<>();
+            arguments.add("\"" + name + "\"");
+            arguments.addAll(classLiterals);
+            return join(arguments);
+        }
+
+        /**
+         * 写出调用语句
+         *
+         * @param source    生成的代码
+         * @param prefix    调用前的代码，如“return udf.”
+         * @param array     存放已转换参数的数组变量名
+         */
+        void write(SourceBuilder source, String prefix, String array) {
+            List<String> arguments = new ArrayList<>();
+            for (int i = 0; i < castTypes.size(); i++) {
+                arguments.add("(" + castTypes.get(i) + ") " + array + "[" + i + "]");
+            }
+            String statement = prefix + name + "(" + join(arguments) + ");";
+            if (!throwsException) {
+                source.line(statement);
+                return;
+            }
+            source.open("try {")
+                    .line(statement)
+                    .close("} catch (Exception e) {")
+                    .indent()
+                    .line("throw e instanceof HiveException ? (HiveException) e : new HiveException(e);")
+                    .close("}");
+        }
+    }
+
+    /**
+     * 按四个空格缩进拼接生成的代码
+     */
+    private static class SourceBuilder {
+        private final StringBuilder sb = new StringBuilder();
+        private int depth;
+
+        SourceBuilder line() {
+            sb.append('\n');
+            return this;
+        }
+
+        SourceBuilder line(String line) {
+            for (int i = 0; i < depth; i++) {
+                sb.append("    ");
+            }
+            sb.append(line).append('\n');
+            return this;
+        }
+
+        SourceBuilder lines(List<String> lines) {
+            for (String line : lines) {
+                line(line);
+            }
+            return this;
+        }
+
+        /**
+         * 写出一行并增加缩进
+         */
+        SourceBuilder open(String line) {
+            line(line);
+            depth++;
+            return this;
+        }
+
+        /**
+         * 减少缩进并写出一行
+         */
+        SourceBuilder close(String line) {
+            depth--;
+            return line(line);
+        }
+
+        SourceBuilder indent() {
+            depth++;
+            return this;
+        }
+
+        SourceBuilder outdent() {
+            depth--;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+    }
+}
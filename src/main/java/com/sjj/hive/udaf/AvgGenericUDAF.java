@@ -4,20 +4,21 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec;
+import org.apache.hadoop.hive.ql.plan.ptf.BoundaryDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
 import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
 import org.apache.hadoop.hive.serde2.objectinspector.*;
-import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
-import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
-import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
-import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.BytesWritable;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * @author Jiajun Song
@@ -55,13 +56,15 @@ public class AvgGenericUDAF extends AbstractGenericUDAFResolver {
             case SHORT:
             case INT:
             case LONG:
+                return new AvgGenericUDAFLongEvaluator();
             case FLOAT:
             case DOUBLE:
+                return new AvgGenericUDAFDoubleEvaluator();
             case STRING:
             case VARCHAR:
             case CHAR:
             case TIMESTAMP:
-                return new AvgGenericUDAFDoubleEvaluator();
+                return new AvgGenericUDAFConvertEvaluator();
             case DECIMAL:
             case BOOLEAN:
             case DATE:
@@ -72,34 +75,106 @@ public class AvgGenericUDAF extends AbstractGenericUDAFResolver {
         }
     }
 
+    /**
+     * 部分聚合结果的字节数，依次为8字节的count及8字节的sum
+     */
+    static final int PARTIAL_LENGTH = 16;
+
+    /**
+     * 将count及sum按大端序写入部分聚合结果
+     */
+    static void writePartial(byte[] bytes, long count, double sum) {
+        BinaryCodec.writeLong(bytes, 0, count);
+        BinaryCodec.writeLong(bytes, 8, Double.doubleToLongBits(sum));
+    }
+
+    /**
+     * 从部分聚合结果中读取count
+     */
+    static long readCount(byte[] bytes, int offset) {
+        return BinaryCodec.readLong(bytes, offset);
+    }
+
+    /**
+     * 从部分聚合结果中读取sum
+     */
+    static double readSum(byte[] bytes, int offset) {
+        return Double.longBitsToDouble(BinaryCodec.readLong(bytes, offset + 8));
+    }
+
     /**
      * 存储聚合过程中的中间数据
+     * 标记为可估算大小，map端哈希聚合根据estimate()的结果判断何时刷写
      */
-    private static class AvgAggregationBuffer implements GenericUDAFEvaluator.AggregationBuffer {
-        private long cnt = 0L;
-        private double sum = 0.0;
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    private static class AvgAggregationBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        long cnt = 0L;
+        double sum = 0.0;
+
+        void reset() {
+            cnt = 0L;
+            sum = 0.0;
+        }
+
+        /**
+         * 获取当前的累加和
+         */
+        double sum() {
+            return sum;
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) JavaDataModel.alignUp(model.object() + model.primitive2() * 2, model.memoryAlign());
+        }
     }
 
     /**
-     * 针对Double类型的计算类，实现计算所需的方法
+     * 整数类型的中间数据，累加和先精确地存储在long中，溢出时再转存到double中
      */
-    public static class AvgGenericUDAFDoubleEvaluator extends GenericUDAFEvaluator {
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    private static class LongAvgAggregationBuffer extends AvgAggregationBuffer {
+        long longSum = 0L;
+
+        @Override
+        void reset() {
+            super.reset();
+            longSum = 0L;
+        }
+
+        @Override
+        double sum() {
+            return super.sum() + longSum;
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) JavaDataModel.alignUp(model.object() + model.primitive2() * 3, model.memoryAlign());
+        }
+    }
+
+    /**
+     * 各类型计算类的公共部分，部分聚合结果均为16字节的二进制数据(count, sum)，子类只需实现对入参的读取
+     */
+    public abstract static class AbstractAvgEvaluator extends GenericUDAFEvaluator {
         /**
          * PARTIAL1及COMPLETE阶段的入参检查器
          */
-        private transient PrimitiveObjectInspector inputOI;
+        protected transient PrimitiveObjectInspector inputOI;
+        /**
+         * 入参的读取器，整数类型的计算类直接读取long，不使用该读取器
+         */
+        protected transient InputReaders.DoubleReader doubleReader;
         /**
          * PARTIAL2及FINAL阶段的入参检查器
          */
-        private transient StructObjectInspector partialOI;
-        private transient StructField countField;
-        private transient StructField sumField;
-        private LongObjectInspector countFieldOI;
-        private DoubleObjectInspector sumFieldOI;
+        private transient BinaryObjectInspector partialOI;
         /**
          * PARTIAL1及PARTIAL2阶段的中间结果
          */
-        private transient Object[] partialResult;
+        private transient BytesWritable partialResult;
 
         /**
          * 计算开始时调用，执行初始化相关操作
@@ -118,39 +193,78 @@ public class AvgGenericUDAF extends AbstractGenericUDAFResolver {
             if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
                 // 当前阶段为PARTIAL1或COMPLETE，则入参数据为Hive函数的入参
                 inputOI = (PrimitiveObjectInspector) parameters[0];
+                initInput(inputOI);
             } else {
                 // 当前阶段为PARTIAL2或FINAL，则入参数据为中间结果
-                partialOI = (StructObjectInspector) parameters[0];
-                countField = partialOI.getStructFieldRef("count");
-                sumField = partialOI.getStructFieldRef("sum");
-                countFieldOI = (LongObjectInspector) countField.getFieldObjectInspector();
-                sumFieldOI = (DoubleObjectInspector) sumField.getFieldObjectInspector();
-                inputOI = (PrimitiveObjectInspector) partialOI.getStructFieldRef("input").getFieldObjectInspector();
+                // 中间结果与Hive函数原本的入参类型无关，因此不需要再传递入参类型
+                partialOI = (BinaryObjectInspector) parameters[0];
             }
 
             // 初始化出参
             if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
-                // 当前阶段为PARTIAL1或PARTIAL2，则出参数据为中间结果
-                ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
-                foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
-                foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
-                // 将Hive函数原本的入参类型也记录下来
-                // 若不在此处传递Hive函数原本的入参类型，则PARTIAL2阶段就无法从当前方法的入参中获取到Hive函数原本的入参类型
-                foi.add(inputOI);
-                ArrayList<String> fname = new ArrayList<String>();
-                fname.add("count");
-                fname.add("sum");
-                fname.add("input");
-                partialResult = new Object[2];
-                partialResult[0] = new LongWritable(0L);
-                partialResult[1] = new DoubleWritable(0.0);
-                return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+                // 当前阶段为PARTIAL1或PARTIAL2，则出参数据为中间结果，使用定长的二进制数据以减少shuffle的数据量
+                partialResult = new BytesWritable(new byte[PARTIAL_LENGTH]);
+                return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
             } else {
                 // 当前阶段为COMPLETE或FINAL，则出参数据为Hive函数的出参
                 return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
             }
         }
 
+        /**
+         * 在PARTIAL1及COMPLETE阶段根据入参检查器选定入参的读取器
+         *
+         * @param inputOI
+         * @throws HiveException
+         */
+        protected abstract void initInput(PrimitiveObjectInspector inputOI) throws HiveException;
+
+        /**
+         * 读取一个非空入参的数值
+         */
+        double getDouble(Object parameter) {
+            return doubleReader.get(parameter);
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            assert (parameters.length == 1);
+            Object parameter = parameters[0];
+            if (null != parameter) {
+                double value = doubleReader.get(parameter);
+                ((AvgAggregationBuffer) agg).cnt++;
+                ((AvgAggregationBuffer) agg).sum += value;
+            }
+        }
+
+        /**
+         * 窗口函数使用ROWS窗口且窗口结束位置有界时，返回流式计算类，每行只需加入新进入窗口的值并移除离开窗口的值
+         * 其余情况返回null，由Hive对每行重新计算整个窗口
+         *
+         * @param wFrameDef
+         * @return
+         */
+        @Override
+        public GenericUDAFEvaluator getWindowingEvaluator(WindowFrameDef wFrameDef) {
+            BoundaryDef start = wFrameDef.getStart();
+            BoundaryDef end = wFrameDef.getEnd();
+            if (wFrameDef.getWindowType() != WindowingSpec.WindowType.ROWS
+                    || start.isFollowing() || end.isPreceding() || end.isUnbounded()) {
+                return null;
+            }
+            int preceding = start.isUnbounded() ? AvgStreamingEvaluator.UNBOUNDED
+                    : start.isCurrentRow() ? 0 : start.getAmt();
+            int following = end.isCurrentRow() ? 0 : end.getAmt();
+            return new AvgStreamingEvaluator(this, preceding, following);
+        }
+
         /**
          * 计算完成时调用，可用于关闭数据库连接等
          *
@@ -180,26 +294,7 @@ public class AvgGenericUDAF extends AbstractGenericUDAFResolver {
          */
         @Override
         public void reset(AggregationBuffer agg) throws HiveException {
-            ((AvgAggregationBuffer) agg).cnt = 0L;
-            ((AvgAggregationBuffer) agg).sum = 0.0;
-        }
-
-        /**
-         * 对Hive入参数据进行计算
-         *
-         * @param agg
-         * @param parameters
-         * @throws HiveException
-         */
-        @Override
-        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
-            assert (parameters.length == 1);
-            Object parameter = parameters[0];
-            if (null != parameter) {
-                double value = PrimitiveObjectInspectorUtils.getDouble(parameter, inputOI);
-                ((AvgAggregationBuffer) agg).cnt++;
-                ((AvgAggregationBuffer) agg).sum += value;
-            }
+            ((AvgAggregationBuffer) agg).reset();
         }
 
         /**
@@ -211,8 +306,7 @@ public class AvgGenericUDAF extends AbstractGenericUDAFResolver {
          */
         @Override
         public Object terminatePartial(AggregationBuffer agg) throws HiveException {
-            ((LongWritable) partialResult[0]).set(((AvgAggregationBuffer) agg).cnt);
-            ((DoubleWritable) partialResult[1]).set(((AvgAggregationBuffer) agg).sum);
+            writePartial(partialResult.getBytes(), ((AvgAggregationBuffer) agg).cnt, ((AvgAggregationBuffer) agg).sum());
             return partialResult;
         }
 
@@ -226,10 +320,13 @@ public class AvgGenericUDAF extends AbstractGenericUDAFResolver {
         @Override
         public void merge(AggregationBuffer agg, Object partial) throws HiveException {
             if (null != partial) {
-                long partialCnt = countFieldOI.get(partialOI.getStructFieldData(partial, countField));
-                double partialSum = sumFieldOI.get(partialOI.getStructFieldData(partial, sumField));
-                ((AvgAggregationBuffer) agg).cnt += partialCnt;
-                ((AvgAggregationBuffer) agg).sum += partialSum;
+                BytesWritable bytes = partialOI.getPrimitiveWritableObject(partial);
+                if (bytes.getLength() != PARTIAL_LENGTH) {
+                    throw new HiveException("Invalid partial result of avg_udaf_gen, expected "
+                            + PARTIAL_LENGTH + " bytes but got " + bytes.getLength());
+                }
+                ((AvgAggregationBuffer) agg).cnt += readCount(bytes.getBytes(), 0);
+                ((AvgAggregationBuffer) agg).sum += readSum(bytes.getBytes(), 0);
             }
         }
 
@@ -245,8 +342,94 @@ public class AvgGenericUDAF extends AbstractGenericUDAFResolver {
             if (((AvgAggregationBuffer) agg).cnt == 0L) {
                 return null;
             } else {
-                return new DoubleWritable(((AvgAggregationBuffer) agg).sum / ((AvgAggregationBuffer) agg).cnt);
+                return new DoubleWritable(((AvgAggregationBuffer) agg).sum() / ((AvgAggregationBuffer) agg).cnt);
+            }
+        }
+    }
+
+    /**
+     * 针对整数类型(tinyint/smallint/int/bigint)的计算类，直接从对应的对象检查器中读取原始值，累加和使用long存储
+     */
+    public static class AvgGenericUDAFLongEvaluator extends AbstractAvgEvaluator {
+        /**
+         * 按入参类型选定的整数读取器，iterate中只需一次调用
+         */
+        private transient InputReaders.LongReader longReader;
+
+        @Override
+        protected void initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            longReader = InputReaders.longReader(inputOI);
+        }
+
+        /**
+         * 读取一个非空入参的整数值
+         */
+        long getLong(Object parameter) {
+            return longReader.get(parameter);
+        }
+
+        @Override
+        double getDouble(Object parameter) {
+            return longReader.get(parameter);
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new LongAvgAggregationBuffer();
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            assert (parameters.length == 1);
+            Object parameter = parameters[0];
+            if (null != parameter) {
+                long value = longReader.get(parameter);
+                LongAvgAggregationBuffer myagg = (LongAvgAggregationBuffer) agg;
+                myagg.cnt++;
+                long sum = myagg.longSum + value;
+                // 两个同号的数相加结果却异号，说明发生了溢出，此时将已有的累加和转存到double中
+                if (((myagg.longSum ^ sum) & (value ^ sum)) < 0) {
+                    myagg.sum += myagg.longSum;
+                    sum = value;
+                }
+                myagg.longSum = sum;
             }
         }
     }
+
+    /**
+     * 针对浮点类型(float/double)的计算类
+     */
+    public static class AvgGenericUDAFDoubleEvaluator extends AbstractAvgEvaluator {
+        @Override
+        protected void initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            switch (inputOI.getPrimitiveCategory()) {
+                case FLOAT:
+                case DOUBLE:
+                    doubleReader = InputReaders.doubleReader(inputOI);
+                    break;
+                default:
+                    throw new UDFArgumentTypeException(0,
+                            "Only float or double type arguments are accepted but " + inputOI.getTypeName()
+                                    + " is passed.");
+            }
+        }
+    }
+
+    /**
+     * 针对需要先转换为double的类型的计算类，字符串(string/varchar/char)解析为double，timestamp以秒为单位(包含小数部分)
+     */
+    public static class AvgGenericUDAFConvertEvaluator extends AbstractAvgEvaluator {
+        @Override
+        protected void initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            doubleReader = InputReaders.doubleReader(inputOI);
+        }
+    }
 }
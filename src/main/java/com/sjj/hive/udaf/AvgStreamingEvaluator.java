@@ -0,0 +1,294 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.ISupportStreamingModeForWindowing;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+
+/**
+ * avg_udaf_gen的流式窗口计算类，用于ROWS BETWEEN n PRECEDING(或UNBOUNDED PRECEDING、CURRENT ROW)
+ * AND m FOLLOWING(或CURRENT ROW)的窗口
+ * 维护当前窗口的count及sum，每行只加入新进入窗口的值并移除离开窗口的值，每行的计算量为O(1)
+ * 离开窗口前的值存储在大小为n+m+1的环形数组中，内存占用只与窗口大小有关，与分区大小无关
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+class AvgStreamingEvaluator extends GenericUDAFEvaluator implements ISupportStreamingModeForWindowing {
+    /**
+     * 窗口起始位置为UNBOUNDED PRECEDING
+     */
+    static final int UNBOUNDED = -1;
+
+    /**
+     * 被包装的计算类，用于读取入参
+     */
+    private final AvgGenericUDAF.AbstractAvgEvaluator wrappedEval;
+
+    /**
+     * 入参为整数类型时，累加和使用两个long组成的128位整数精确计算，移除值时不会产生误差
+     */
+    private final boolean integral;
+
+    /**
+     * 窗口起始位置在当前行之前的行数，为UNBOUNDED时不需要移除任何值
+     */
+    private final int preceding;
+
+    /**
+     * 窗口结束位置在当前行之后的行数，即结果相对入参延迟输出的行数
+     */
+    private final int following;
+
+    AvgStreamingEvaluator(AvgGenericUDAF.AbstractAvgEvaluator wrappedEval, int preceding, int following) {
+        this.wrappedEval = wrappedEval;
+        this.integral = wrappedEval instanceof AvgGenericUDAF.AvgGenericUDAFLongEvaluator;
+        this.preceding = preceding;
+        this.following = following;
+    }
+
+    /**
+     * 流式计算过程中的状态
+     */
+    @AggregationType(estimable = true)
+    private final class StreamingState extends AbstractAggregationBuffer {
+        /**
+         * 窗口中的值，按行号对数组大小取模存储，起始位置为UNBOUNDED时为null
+         */
+        private final long[] longValues;
+        private final double[] doubleValues;
+        private final boolean[] nulls;
+
+        /**
+         * 已计算完成但尚未输出的结果
+         */
+        private final double[] results;
+        private final boolean[] resultNulls;
+        private int resultHead;
+        private int resultSize;
+
+        /**
+         * 已处理的行数
+         */
+        private int numRows;
+
+        /**
+         * 当前窗口中非空值的个数及累加和，整数类型的累加和为sumHigh * 2^64 + sumLow(无符号)
+         */
+        private long count;
+        private long sumHigh;
+        private long sumLow;
+        private double doubleSum;
+
+        StreamingState() {
+            int capacity = preceding == UNBOUNDED ? 0 : preceding + following + 1;
+            longValues = integral && capacity > 0 ? new long[capacity] : null;
+            doubleValues = !integral && capacity > 0 ? new double[capacity] : null;
+            nulls = capacity > 0 ? new boolean[capacity] : null;
+            results = new double[following + 1];
+            resultNulls = new boolean[following + 1];
+            reset();
+        }
+
+        void reset() {
+            resultHead = 0;
+            resultSize = 0;
+            numRows = 0;
+            count = 0L;
+            sumHigh = 0L;
+            sumLow = 0L;
+            doubleSum = 0.0;
+        }
+
+        void add(Object parameter) throws HiveException {
+            int slot = null == nulls ? -1 : numRows % nulls.length;
+            // 环形数组已满时，当前位置存储的值正好是离开窗口的值
+            if (slot >= 0 && numRows >= nulls.length) {
+                remove(slot);
+            }
+            if (null == parameter) {
+                if (slot >= 0) {
+                    nulls[slot] = true;
+                }
+            } else if (integral) {
+                long value = ((AvgGenericUDAF.AvgGenericUDAFLongEvaluator) wrappedEval).getLong(parameter);
+                addLong(value);
+                if (slot >= 0) {
+                    nulls[slot] = false;
+                    longValues[slot] = value;
+                }
+            } else {
+                double value = wrappedEval.getDouble(parameter);
+                count++;
+                doubleSum += value;
+                if (slot >= 0) {
+                    nulls[slot] = false;
+                    doubleValues[slot] = value;
+                }
+            }
+            numRows++;
+        }
+
+        private void addLong(long value) {
+            count++;
+            long low = sumLow + value;
+            // 高位加上value的符号扩展，低位按无符号数比较判断是否产生进位
+            sumHigh += (value >> 63) + (Long.compareUnsigned(low, sumLow) < 0 ? 1L : 0L);
+            sumLow = low;
+        }
+
+        /**
+         * 从窗口中移除环形数组中指定位置的值
+         */
+        void remove(int slot) {
+            if (nulls[slot]) {
+                return;
+            }
+            count--;
+            if (integral) {
+                long value = longValues[slot];
+                long low = sumLow - value;
+                // 高位减去value的符号扩展，低位按无符号数比较判断是否产生借位
+                sumHigh -= (value >> 63) + (Long.compareUnsigned(sumLow, value) < 0 ? 1L : 0L);
+                sumLow = low;
+            } else {
+                doubleSum -= doubleValues[slot];
+            }
+        }
+
+        /**
+         * 获取当前窗口的累加和
+         */
+        double sum() {
+            if (!integral) {
+                return doubleSum;
+            }
+            if (sumHigh == sumLow >> 63) {
+                // 累加和在long的范围内
+                return sumLow;
+            }
+            double low = (sumLow >>> 1) * 2.0 + (sumLow & 1L);
+            return sumHigh * 0x1p64 + low;
+        }
+
+        /**
+         * 将当前窗口的平均值加入待输出的结果中
+         */
+        void addResult() {
+            int index = (resultHead + resultSize) % results.length;
+            resultNulls[index] = count == 0L;
+            if (count != 0L) {
+                results[index] = sum() / count;
+            }
+            resultSize++;
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            int values = null == nulls ? 0 : nulls.length;
+            return (int) (model.object() * 2 + model.primitive2() * 5
+                    + model.lengthForLongArrayOfSize(values)
+                    + model.lengthForBooleanArrayOfSize(values)
+                    + model.lengthForDoubleArrayOfSize(following + 1)
+                    + model.lengthForBooleanArrayOfSize(following + 1));
+        }
+    }
+
+    @Override
+    public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+        super.init(m, parameters);
+        return wrappedEval.init(m, parameters);
+    }
+
+    @Override
+    public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+        return new StreamingState();
+    }
+
+    @Override
+    public void reset(AggregationBuffer agg) throws HiveException {
+        ((StreamingState) agg).reset();
+    }
+
+    /**
+     * 加入一行，窗口的结束位置到达该行时输出窗口起始行的结果
+     *
+     * @param agg
+     * @param parameters
+     * @throws HiveException
+     */
+    @Override
+    public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+        StreamingState state = (StreamingState) agg;
+        state.add(parameters[0]);
+        if (state.numRows > following) {
+            state.addResult();
+        }
+    }
+
+    /**
+     * 窗口计算直接使用getWindowingEvaluator返回的对象，不会调用init，父类的mode为null时aggregate会调用merge
+     * 流式计算只处理原始入参，因此直接调用iterate
+     *
+     * @param agg
+     * @param parameters
+     * @throws HiveException
+     */
+    @Override
+    public void aggregate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+        iterate(agg, parameters);
+    }
+
+    /**
+     * 分区结束时计算剩余行的结果，这些行的窗口结束位置超出了分区范围
+     *
+     * @param agg
+     * @return
+     * @throws HiveException
+     */
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
+        StreamingState state = (StreamingState) agg;
+        for (int row = Math.max(0, state.numRows - following); row < state.numRows; row++) {
+            // 该行的窗口为[row - preceding, numRows - 1]
+            if (preceding != UNBOUNDED && row - preceding - 1 >= 0) {
+                state.remove((row - preceding - 1) % state.nulls.length);
+            }
+            state.addResult();
+        }
+        return null;
+    }
+
+    @Override
+    public Object getNextResult(AggregationBuffer agg) throws HiveException {
+        StreamingState state = (StreamingState) agg;
+        if (state.resultSize == 0) {
+            return null;
+        }
+        int index = state.resultHead;
+        state.resultHead = (index + 1) % state.results.length;
+        state.resultSize--;
+        // 结果会被Hive缓存到整行输出为止，因此不能复用输出对象
+        return state.resultNulls[index] ? ISupportStreamingModeForWindowing.NULL_RESULT
+                : new DoubleWritable(state.results[index]);
+    }
+
+    @Override
+    public int getRowsRemainingAfterTerminate() throws HiveException {
+        return following;
+    }
+
+    @Override
+    public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+        throw new HiveException(getClass().getSimpleName() + ": terminatePartial not supported");
+    }
+
+    @Override
+    public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+        throw new HiveException(getClass().getSimpleName() + ": merge not supported");
+    }
+}
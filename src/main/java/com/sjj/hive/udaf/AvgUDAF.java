@@ -1,5 +1,6 @@
 package com.sjj.hive.udaf;
 
+import com.sjj.hive.processor.GenericAdapter;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDAF;
 import org.apache.hadoop.hive.ql.exec.UDAFEvaluator;
@@ -16,12 +17,13 @@ import org.apache.hadoop.hive.ql.metadata.HiveException;
         extended = "Example:\n"
                 + "  > SELECT _FUNC_(age) FROM table GROUP BY class;"
 )
+@GenericAdapter
 @SuppressWarnings("deprecation")
 public class AvgUDAF extends UDAF {
     /**
-     * 创建一个类，用于存储计算所需的数据
+     * 创建一个类，用于存储计算所需的数据，生成的AvgUDAFAdapter需要引用该类，因此不能为私有
      */
-    private static class AvgState {
+    static class AvgState {
         private double sum = 0.0;
         private long cnt = 0L;
     }
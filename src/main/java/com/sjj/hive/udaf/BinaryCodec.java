@@ -0,0 +1,56 @@
+package com.sjj.hive.udaf;
+
+/**
+ * 二进制部分聚合结果的读写方法，本包内各UDAF的中间结果均按大端序存储定长的整数
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+final class BinaryCodec {
+    private BinaryCodec() {
+        // 避免实例化
+    }
+
+    /**
+     * 按大端序写入8字节的long
+     */
+    static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * 按大端序读取8字节的long
+     */
+    static long readLong(byte[] bytes, int offset) {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFFL);
+        }
+        return value;
+    }
+
+    /**
+     * 按大端序写入4字节的int
+     */
+    static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = 3; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * 按大端序读取4字节的int
+     */
+    static int readInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,235 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * 由一列key构建布隆过滤器，部分聚合结果与最终结果均为序列化后的位数组，合并时按位或
+ * 结果可通过bloom_contains在大表join前过滤掉另一侧不可能匹配的行，减少shuffle的数据量
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "bloom_build",
+        value = "_FUNC_(key, expected_n, fpp) - Returns a bloom filter of key sized for expected_n distinct keys "
+                + "with a false positive probability of fpp, only integer, date or string keys are accepted",
+        extended = "Example:\n"
+                + "  > SELECT _FUNC_(user_id, 1000000, 0.01) FROM small_table;"
+)
+public class BloomBuildGenericUDAF extends AbstractGenericUDAFResolver {
+    /**
+     * 根据入参获取对应的Evaluator执行器
+     *
+     * @param info
+     * @return
+     * @throws SemanticException
+     */
+    @Override
+    public GenericUDAFEvaluator getEvaluator(TypeInfo[] info) throws SemanticException {
+        if (info.length != 3) {
+            throw new UDFArgumentTypeException(info.length - 1,
+                    "Exactly three arguments are expected.");
+        }
+        for (int i = 0; i < info.length; i++) {
+            if (info[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+                throw new UDFArgumentTypeException(i,
+                        "Only primitive type arguments are accepted but "
+                                + info[i].getTypeName() + " is passed.");
+            }
+        }
+        switch (((PrimitiveTypeInfo) info[0]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case DATE:
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+                return new BloomBuildEvaluator();
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only integer, date or string type keys are accepted but "
+                                + info[0].getTypeName() + " is passed.");
+        }
+    }
+
+    /**
+     * 中间数据
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class BloomBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        BloomFilter filter;
+        /**
+         * PARTIAL2及FINAL阶段是否尚未合并任何部分聚合结果，过滤器的大小在合并第一个部分聚合结果时确定
+         */
+        boolean empty;
+
+        @Override
+        public int estimate() {
+            return filter.estimateMemory();
+        }
+    }
+
+    /**
+     * 计算类
+     */
+    public static class BloomBuildEvaluator extends GenericUDAFEvaluator {
+        /**
+         * PARTIAL1及COMPLETE阶段读取key的对象及过滤器参数
+         */
+        private transient BloomFilter.KeyHasher hasher;
+        private transient long expectedN;
+        private transient double fpp;
+        /**
+         * PARTIAL2及FINAL阶段的入参检查器
+         */
+        private transient BinaryObjectInspector partialOI;
+        /**
+         * 复用的出参对象
+         */
+        private transient BytesWritable result;
+
+        /**
+         * 计算开始时调用，执行初始化相关操作
+         *
+         * @param m
+         * @param parameters
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+            super.init(m, parameters);
+
+            // 初始化入参
+            if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+                // 当前阶段为PARTIAL1或COMPLETE，则入参数据为Hive函数的入参
+                assert (parameters.length == 3);
+                hasher = new BloomFilter.KeyHasher((PrimitiveObjectInspector) parameters[0]);
+                expectedN = PrimitiveObjectInspectorUtils.getLong(getConstant(parameters, 1),
+                        (PrimitiveObjectInspector) parameters[1]);
+                fpp = PrimitiveObjectInspectorUtils.getDouble(getConstant(parameters, 2),
+                        (PrimitiveObjectInspector) parameters[2]);
+                if (expectedN <= 0L) {
+                    throw new UDFArgumentTypeException(1, "The expected_n of bloom_build must be positive.");
+                }
+                if (!(fpp > 0.0 && fpp < 1.0)) {
+                    throw new UDFArgumentTypeException(2, "The fpp of bloom_build must be between 0 and 1.");
+                }
+            } else {
+                // 当前阶段为PARTIAL2或FINAL，则入参数据为中间结果
+                // 缓冲区按hasher是否为null区分阶段，评估器被重新初始化时需要清除上一阶段的hasher
+                hasher = null;
+                partialOI = (BinaryObjectInspector) parameters[0];
+            }
+            result = new BytesWritable();
+            return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+        }
+
+        private static Object getConstant(ObjectInspector[] parameters, int i) throws HiveException {
+            Object value = parameters[i] instanceof ConstantObjectInspector
+                    ? ((ConstantObjectInspector) parameters[i]).getWritableConstantValue() : null;
+            if (null == value) {
+                throw new UDFArgumentTypeException(i, "The argument " + (i + 1)
+                        + " of bloom_build must be a non-null constant.");
+            }
+            return value;
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            BloomBuffer buffer = new BloomBuffer();
+            buffer.filter = null != hasher ? new BloomFilter(expectedN, fpp) : new BloomFilter();
+            buffer.empty = null == hasher;
+            return buffer;
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            BloomBuffer myagg = (BloomBuffer) agg;
+            myagg.filter.clear();
+            myagg.empty = null == hasher;
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            if (null != parameters[0]) {
+                ((BloomBuffer) agg).filter.add(hasher.hash(parameters[0]));
+            }
+        }
+
+        /**
+         * 生成部分聚合结果
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+            return terminate(agg);
+        }
+
+        /**
+         * 对部分聚合结果进行合并
+         *
+         * @param agg
+         * @param partial
+         * @throws HiveException
+         */
+        @Override
+        public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+            if (null != partial) {
+                BloomBuffer myagg = (BloomBuffer) agg;
+                BytesWritable bytes = partialOI.getPrimitiveWritableObject(partial);
+                if (myagg.empty) {
+                    // 复用上一组的位数组
+                    myagg.filter.set(bytes.getBytes(), 0, bytes.getLength());
+                    myagg.empty = false;
+                } else {
+                    myagg.filter.merge(bytes.getBytes(), 0, bytes.getLength());
+                }
+            }
+        }
+
+        /**
+         * 计算最终结果，PARTIAL2及FINAL阶段没有合并任何部分聚合结果时返回NULL
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            BloomBuffer myagg = (BloomBuffer) agg;
+            if (myagg.empty) {
+                return null;
+            }
+            myagg.filter.serialize(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DateObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hive.common.util.Murmur3;
+
+import java.util.Arrays;
+
+/**
+ * 布隆过滤器，位数组存储在long[]中，位数及哈希函数个数由预计元素个数n及误判率p确定
+ * 位数m = -n * ln(p) / (ln2)^2，哈希函数个数为m / n * ln2，各哈希函数由64位哈希的高低两部分组合得到
+ * 序列化格式为[哈希函数个数][long个数][位数组]，可以直接在序列化后的字节上判断元素是否存在
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+public final class BloomFilter {
+    /**
+     * 位数组的最大long个数，即最大为256MB，此时位数不超过int的范围
+     */
+    static final int MAX_WORDS = 1 << 25;
+
+    /**
+     * 序列化后位数组之前的字节数
+     */
+    private static final int HEADER_LENGTH = 8;
+
+    private int numHashFunctions;
+    private long[] words;
+
+    /**
+     * 创建一个尚未确定大小的空过滤器，此时只能合并其他过滤器
+     */
+    public BloomFilter() {
+    }
+
+    /**
+     * 按预计元素个数及误判率创建过滤器
+     *
+     * @param expectedN
+     * @param fpp
+     */
+    BloomFilter(long expectedN, double fpp) {
+        long bits = (long) Math.ceil(-Math.max(expectedN, 1L) * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int numWords = (int) Math.max(1L, Math.min(MAX_WORDS, (bits + 63) >>> 6));
+        numHashFunctions = Math.max(1, (int) Math.round((double) numWords * 64 / Math.max(expectedN, 1L) * Math.log(2)));
+        words = new long[numWords];
+    }
+
+    /**
+     * 计算元素的哈希，构建及查询过滤器时使用相同的规则，保证不同宽度的整数值相同时哈希相同
+     * 整数按值计算，date按距1970-01-01的天数计算，字符串按UTF-8字节计算，读取时不创建对象
+     */
+    public static final class KeyHasher {
+        private final PrimitiveObjectInspector inputOI;
+        private DateObjectInspector dateOI;
+        private StringObjectInspector stringOI;
+        /**
+         * varchar及char类型先转换为string
+         */
+        private ObjectInspectorConverters.Converter converter;
+
+        /**
+         * @param inputOI 元素的检查器，只支持整数、date及字符串类型
+         * @throws UDFArgumentException
+         */
+        public KeyHasher(PrimitiveObjectInspector inputOI) throws UDFArgumentException {
+            this.inputOI = inputOI;
+            switch (inputOI.getPrimitiveCategory()) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    break;
+                case DATE:
+                    dateOI = (DateObjectInspector) inputOI;
+                    break;
+                case STRING:
+                    stringOI = (StringObjectInspector) inputOI;
+                    break;
+                case VARCHAR:
+                case CHAR:
+                    converter = ObjectInspectorConverters.getConverter(inputOI,
+                            PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+                    break;
+                default:
+                    throw new UDFArgumentException("Only integer, date or string type keys are accepted but "
+                            + inputOI.getTypeName() + " is passed.");
+            }
+        }
+
+        /**
+         * 计算一个非空元素的哈希
+         *
+         * @param value
+         * @return
+         */
+        public long hash(Object value) {
+            if (null != stringOI || null != converter) {
+                Text text = null != stringOI ? stringOI.getPrimitiveWritableObject(value) : (Text) converter.convert(value);
+                return Murmur3.hash64(text.getBytes(), 0, text.getLength());
+            } else if (null != dateOI) {
+                return Murmur3.hash64((long) dateOI.getPrimitiveWritableObject(value).getDays());
+            } else {
+                return Murmur3.hash64(PrimitiveObjectInspectorUtils.getLong(value, inputOI));
+            }
+        }
+    }
+
+    /**
+     * 清空位数组，保留大小
+     */
+    void clear() {
+        if (null != words) {
+            Arrays.fill(words, 0L);
+        }
+    }
+
+    /**
+     * 第i个哈希函数对应的位，由64位哈希的低32位加上i倍的高32位得到
+     */
+    private static long bit(long hash, int i, long numBits) {
+        int combined = (int) hash + i * (int) (hash >>> 32);
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % numBits;
+    }
+
+    /**
+     * 加入一个元素的哈希
+     *
+     * @param hash
+     */
+    void add(long hash) {
+        long numBits = (long) words.length << 6;
+        for (int i = 1; i <= numHashFunctions; i++) {
+            long bit = bit(hash, i, numBits);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * 判断元素是否可能存在
+     *
+     * @param hash
+     * @return
+     */
+    public boolean mightContain(long hash) {
+        long numBits = (long) words.length << 6;
+        for (int i = 1; i <= numHashFunctions; i++) {
+            long bit = bit(hash, i, numBits);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 直接在序列化后的字节上判断元素是否可能存在，不需要反序列化
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param hash
+     * @return
+     * @throws HiveException
+     */
+    public static boolean mightContain(byte[] bytes, int offset, int length, long hash) throws HiveException {
+        int numHashFunctions = readNumHashFunctions(bytes, offset, length);
+        int numWords = BinaryCodec.readInt(bytes, offset + 4);
+        long numBits = (long) numWords << 6;
+        for (int i = 1; i <= numHashFunctions; i++) {
+            long bit = bit(hash, i, numBits);
+            // 大端序存储，第bit位位于对应long的第(63 - bit % 64) / 8个字节
+            int position = offset + HEADER_LENGTH + (int) (bit >>> 6) * 8 + 7 - (int) ((bit & 63) >>> 3);
+            if ((bytes[position] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 检查序列化格式并返回哈希函数个数
+     */
+    private static int readNumHashFunctions(byte[] bytes, int offset, int length) throws HiveException {
+        int numHashFunctions = length < HEADER_LENGTH ? -1 : BinaryCodec.readInt(bytes, offset);
+        int numWords = length < HEADER_LENGTH ? -1 : BinaryCodec.readInt(bytes, offset + 4);
+        if (numHashFunctions <= 0 || numWords <= 0 || numWords > MAX_WORDS
+                || length != HEADER_LENGTH + numWords * 8) {
+            throw new HiveException("Invalid bloom filter, got " + length + " bytes");
+        }
+        return numHashFunctions;
+    }
+
+    /**
+     * 读取序列化后的过滤器，位数组大小相同时复用
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws HiveException
+     */
+    public void set(byte[] bytes, int offset, int length) throws HiveException {
+        numHashFunctions = readNumHashFunctions(bytes, offset, length);
+        int numWords = BinaryCodec.readInt(bytes, offset + 4);
+        if (null == words || words.length != numWords) {
+            words = new long[numWords];
+        }
+        for (int i = 0; i < numWords; i++) {
+            words[i] = BinaryCodec.readLong(bytes, offset + HEADER_LENGTH + i * 8);
+        }
+    }
+
+    /**
+     * 合并序列化后的过滤器，两个过滤器的大小必须相同
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws HiveException
+     */
+    void merge(byte[] bytes, int offset, int length) throws HiveException {
+        int otherHashFunctions = readNumHashFunctions(bytes, offset, length);
+        if (otherHashFunctions != numHashFunctions || BinaryCodec.readInt(bytes, offset + 4) != words.length) {
+            throw new HiveException("Cannot merge bloom filters of different sizes");
+        }
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= BinaryCodec.readLong(bytes, offset + HEADER_LENGTH + i * 8);
+        }
+    }
+
+    /**
+     * 将过滤器序列化到复用的BytesWritable中
+     *
+     * @param result
+     */
+    void serialize(BytesWritable result) {
+        result.setSize(HEADER_LENGTH + words.length * 8);
+        byte[] bytes = result.getBytes();
+        BinaryCodec.writeInt(bytes, 0, numHashFunctions);
+        BinaryCodec.writeInt(bytes, 4, words.length);
+        for (int i = 0; i < words.length; i++) {
+            BinaryCodec.writeLong(bytes, HEADER_LENGTH + i * 8, words[i]);
+        }
+    }
+
+    /**
+     * 估计占用的内存
+     *
+     * @return
+     */
+    int estimateMemory() {
+        JavaDataModel model = JavaDataModel.get();
+        return (int) (model.object() + model.ref() + model.primitive1()
+                + (null == words ? 0 : model.lengthForLongArrayOfSize(words.length)));
+    }
+}
@@ -0,0 +1,503 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hive.common.util.Murmur3;
+
+import java.util.Arrays;
+
+/**
+ * 高频项统计，由Count-Min草图及容量有限的候选表组成
+ * 候选表保存当前估计频次最高的4k个值，按频次组成最小堆，新值的估计频次超过堆顶时替换堆顶
+ * 不同值的个数不超过候选表容量时频次是精确的，此时不分配Count-Min草图，超出后才由候选表中的精确频次初始化草图
+ * 草图为4 * w个long计数器，w为不小于16k的2的幂，估计频次只会偏大，偏大的部分以约98%的概率不超过总行数的e/w
+ * 序列化格式为[k][总行数][是否有草图][草图][候选个数][每个候选的(长度, 字节, 频次)]
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+final class FrequentItems {
+    /**
+     * k的取值范围
+     */
+    static final int MIN_K = 1;
+    static final int MAX_K = 1000;
+
+    /**
+     * 草图的行数
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * 返回的个数，为0时表示尚未确定，由之后合并的第一个结果决定
+     */
+    private int k;
+    /**
+     * 已分配的数组对应的k，capacity及width由其决定
+     */
+    private int allocatedK;
+    private int capacity;
+    private int width;
+
+    /**
+     * 加入的总行数
+     */
+    private long n;
+
+    /**
+     * Count-Min草图，只在不同值的个数超过候选表容量后分配
+     */
+    private long[] sketch;
+    private boolean exact;
+
+    /**
+     * 候选表，按位置存储各候选的字节、哈希及频次
+     */
+    private byte[][] items;
+    private int[] lengths;
+    private long[] hashes;
+    private long[] counts;
+    private int size;
+
+    /**
+     * 按频次排列的最小堆，元素为候选表中的位置，positions为各位置在堆中的下标
+     */
+    private int[] heap;
+    private int[] positions;
+
+    /**
+     * 开放寻址的哈希索引，元素为候选表中的位置加1，0表示空位
+     */
+    private int[] index;
+
+    /**
+     * 清空并设置k，k为0或与已分配数组对应的k相同时复用已分配的数组
+     * PARTIAL2及FINAL阶段每组都以0重置，合并的第一个结果通常与上一组的k相同，因此不会每组重新分配
+     *
+     * @param k 为0时表示k由之后合并的第一个结果决定
+     */
+    void reset(int k) {
+        this.k = k;
+        if (k != 0 && k != allocatedK) {
+            allocatedK = k;
+            capacity = Math.max(4 * k, 16);
+            width = Math.max(64, Integer.highestOneBit(16 * k - 1) << 1);
+            sketch = null;
+            items = null;
+        }
+        n = 0L;
+        exact = true;
+        size = 0;
+        if (null != index) {
+            Arrays.fill(index, 0);
+        }
+    }
+
+    long getN() {
+        return n;
+    }
+
+    private void allocate() {
+        if (null == items) {
+            items = new byte[capacity][];
+            lengths = new int[capacity];
+            hashes = new long[capacity];
+            counts = new long[capacity];
+            heap = new int[capacity];
+            positions = new int[capacity];
+            index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        }
+    }
+
+    /**
+     * 加入一个值
+     *
+     * @param bytes
+     * @param length
+     */
+    void update(byte[] bytes, int length) {
+        allocate();
+        n++;
+        long hash = Murmur3.hash64(bytes, 0, length);
+        int slot = find(bytes, 0, length, hash);
+        if (exact) {
+            if (slot >= 0) {
+                counts[slot]++;
+                siftDown(positions[slot]);
+                return;
+            }
+            if (size < capacity) {
+                insert(bytes, 0, length, hash, 1L);
+                return;
+            }
+            // 不同值的个数超出候选表容量，开始使用草图
+            initSketch();
+        }
+        long estimate = addToSketch(hash, 1L);
+        if (slot >= 0) {
+            counts[slot] = estimate;
+            siftDown(positions[slot]);
+        } else {
+            offer(bytes, 0, length, hash, estimate);
+        }
+    }
+
+    /**
+     * 由候选表中的精确频次初始化草图
+     */
+    private void initSketch() {
+        if (null == sketch) {
+            sketch = new long[DEPTH * width];
+        } else {
+            Arrays.fill(sketch, 0L);
+        }
+        exact = false;
+        for (int i = 0; i < size; i++) {
+            addToSketch(hashes[i], counts[i]);
+        }
+    }
+
+    /**
+     * 在草图中增加频次，并返回增加后的估计频次
+     */
+    private long addToSketch(long hash, long count) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = row * width + bucket(hash, row);
+            sketch[cell] += count;
+            estimate = Math.min(estimate, sketch[cell]);
+        }
+        return estimate;
+    }
+
+    private long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch[row * width + bucket(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * 由64位哈希的高低两部分组合出各行的哈希
+     */
+    private int bucket(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return (combined ^ (combined >>> 16)) & (width - 1);
+    }
+
+    /**
+     * 候选表未满时加入，已满时估计频次超过堆顶才替换堆顶
+     */
+    private void offer(byte[] bytes, int start, int length, long hash, long count) {
+        if (size < capacity) {
+            insert(bytes, start, length, hash, count);
+        } else if (count > counts[heap[0]]) {
+            int slot = heap[0];
+            removeIndex(slot);
+            set(slot, bytes, start, length, hash, count);
+            addIndex(slot);
+            siftDown(0);
+        }
+    }
+
+    private void insert(byte[] bytes, int start, int length, long hash, long count) {
+        int slot = size++;
+        set(slot, bytes, start, length, hash, count);
+        addIndex(slot);
+        heap[slot] = slot;
+        positions[slot] = slot;
+        siftUp(slot);
+    }
+
+    private void set(int slot, byte[] bytes, int start, int length, long hash, long count) {
+        if (null == items[slot] || items[slot].length < length) {
+            items[slot] = new byte[Math.max(length, 16)];
+        }
+        System.arraycopy(bytes, start, items[slot], 0, length);
+        lengths[slot] = length;
+        hashes[slot] = hash;
+        counts[slot] = count;
+    }
+
+    /**
+     * 查找值在候选表中的位置，不存在时返回-1
+     */
+    private int find(byte[] bytes, int start, int length, long hash) {
+        int mask = index.length - 1;
+        for (int i = (int) hash & mask; index[i] != 0; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            if (hashes[slot] == hash && lengths[slot] == length && WritableComparator.compareBytes(
+                    items[slot], 0, length, bytes, start, length) == 0) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void addIndex(int slot) {
+        int mask = index.length - 1;
+        int i = (int) hashes[slot] & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+    }
+
+    /**
+     * 从哈希索引中删除，并将之后的元素前移，保证线性探测的查找不会中断
+     */
+    private void removeIndex(int slot) {
+        int mask = index.length - 1;
+        int i = (int) hashes[slot] & mask;
+        while (index[i] != slot + 1) {
+            i = (i + 1) & mask;
+        }
+        index[i] = 0;
+        for (int j = (i + 1) & mask; index[j] != 0; j = (j + 1) & mask) {
+            int home = (int) hashes[index[j] - 1] & mask;
+            // home不在(i, j]之间时，元素可以前移到i
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                index[i] = index[j];
+                index[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[slot] <= counts[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+
+    /**
+     * 合并序列化后的结果，两边都是精确频次且合并后不同值的个数不超过候选表容量时结果仍是精确的
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws HiveException
+     */
+    void merge(byte[] bytes, int offset, int length) throws HiveException {
+        int end = offset + length;
+        if (length < 13) {
+            throw new HiveException("Invalid frequent items partial, got " + length + " bytes");
+        }
+        int otherK = BinaryCodec.readInt(bytes, offset);
+        long otherN = BinaryCodec.readLong(bytes, offset + 4);
+        boolean otherExact = bytes[offset + 12] == 0;
+        if (otherN == 0L) {
+            return;
+        }
+        if (otherK < MIN_K || otherK > MAX_K || (k != 0 && otherK != k)) {
+            throw new HiveException("Cannot merge frequent items with k " + k + " and " + otherK);
+        }
+        if (k == 0) {
+            reset(otherK);
+        }
+        allocate();
+        int sketchOffset = offset + 13;
+        int itemsOffset = otherExact ? sketchOffset : sketchOffset + DEPTH * width * 8;
+        if (itemsOffset + 4 > end) {
+            throw new HiveException("Invalid frequent items partial, got " + length + " bytes");
+        }
+        int otherSize = BinaryCodec.readInt(bytes, itemsOffset);
+        n += otherN;
+
+        if (exact && otherExact) {
+            // 统计合并后新增的值的个数，不超过候选表容量时直接累加精确频次
+            int added = 0;
+            for (int i = 0, position = itemsOffset + 4; i < otherSize; i++) {
+                int itemLength = readItemLength(bytes, position, end);
+                if (find(bytes, position + 4, itemLength,
+                        Murmur3.hash64(bytes, position + 4, itemLength)) < 0) {
+                    added++;
+                }
+                position += 12 + itemLength;
+            }
+            if (size + added <= capacity) {
+                for (int i = 0, position = itemsOffset + 4; i < otherSize; i++) {
+                    int itemLength = readItemLength(bytes, position, end);
+                    long hash = Murmur3.hash64(bytes, position + 4, itemLength);
+                    long count = BinaryCodec.readLong(bytes, position + 4 + itemLength);
+                    int slot = find(bytes, position + 4, itemLength, hash);
+                    if (slot >= 0) {
+                        counts[slot] += count;
+                        siftDown(positions[slot]);
+                    } else {
+                        insert(bytes, position + 4, itemLength, hash, count);
+                    }
+                    position += 12 + itemLength;
+                }
+                return;
+            }
+        }
+
+        // 合并草图，没有草图的一方由精确频次加入草图
+        if (exact) {
+            initSketch();
+        }
+        if (otherExact) {
+            for (int i = 0, position = itemsOffset + 4; i < otherSize; i++) {
+                int itemLength = readItemLength(bytes, position, end);
+                addToSketch(Murmur3.hash64(bytes, position + 4, itemLength),
+                        BinaryCodec.readLong(bytes, position + 4 + itemLength));
+                position += 12 + itemLength;
+            }
+        } else {
+            for (int i = 0; i < sketch.length; i++) {
+                sketch[i] += BinaryCodec.readLong(bytes, sketchOffset + i * 8);
+            }
+        }
+        // 按合并后的草图重新估计已有候选的频次，再加入对方的候选
+        for (int i = 0; i < size; i++) {
+            counts[i] = estimate(hashes[i]);
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        for (int i = 0, position = itemsOffset + 4; i < otherSize; i++) {
+            int itemLength = readItemLength(bytes, position, end);
+            long hash = Murmur3.hash64(bytes, position + 4, itemLength);
+            if (find(bytes, position + 4, itemLength, hash) < 0) {
+                offer(bytes, position + 4, itemLength, hash, estimate(hash));
+            }
+            position += 12 + itemLength;
+        }
+    }
+
+    private static int readItemLength(byte[] bytes, int position, int end) throws HiveException {
+        int length = position + 4 > end ? -1 : BinaryCodec.readInt(bytes, position);
+        if (length < 0 || position + 12 + length > end) {
+            throw new HiveException("Invalid frequent items partial, item exceeds the partial");
+        }
+        return length;
+    }
+
+    /**
+     * 将结果序列化到复用的BytesWritable中
+     *
+     * @param result
+     */
+    void serialize(BytesWritable result) {
+        int length = 17 + (exact ? 0 : sketch.length * 8);
+        for (int i = 0; i < size; i++) {
+            length += 12 + lengths[i];
+        }
+        result.setSize(length);
+        byte[] bytes = result.getBytes();
+        BinaryCodec.writeInt(bytes, 0, k);
+        BinaryCodec.writeLong(bytes, 4, n);
+        bytes[12] = (byte) (exact ? 0 : 1);
+        int position = 13;
+        if (!exact) {
+            for (long cell : sketch) {
+                BinaryCodec.writeLong(bytes, position, cell);
+                position += 8;
+            }
+        }
+        BinaryCodec.writeInt(bytes, position, size);
+        position += 4;
+        for (int i = 0; i < size; i++) {
+            BinaryCodec.writeInt(bytes, position, lengths[i]);
+            System.arraycopy(items[i], 0, bytes, position + 4, lengths[i]);
+            BinaryCodec.writeLong(bytes, position + 4 + lengths[i], counts[i]);
+            position += 12 + lengths[i];
+        }
+    }
+
+    /**
+     * 按估计频次从高到低返回最多k个候选在候选表中的位置，频次相同时按字节排序
+     *
+     * @return
+     */
+    int[] top() {
+        // 插入排序维护前k个，候选表最多4k个，k很小
+        int[] top = new int[Math.min(k, size)];
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (count == top.length && !before(slot, top[count - 1])) {
+                continue;
+            }
+            int i = count == top.length ? count - 1 : count++;
+            while (i > 0 && before(slot, top[i - 1])) {
+                top[i] = top[i - 1];
+                i--;
+            }
+            top[i] = slot;
+        }
+        return top;
+    }
+
+    private boolean before(int a, int b) {
+        return counts[a] != counts[b] ? counts[a] > counts[b]
+                : WritableComparator.compareBytes(items[a], 0, lengths[a], items[b], 0, lengths[b]) < 0;
+    }
+
+    byte[] getItem(int slot) {
+        return items[slot];
+    }
+
+    int getLength(int slot) {
+        return lengths[slot];
+    }
+
+    long getCount(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * 估计占用的内存
+     *
+     * @return
+     */
+    int estimateMemory() {
+        JavaDataModel model = JavaDataModel.get();
+        long estimate = model.object() + model.ref() * 9 + model.primitive2() + model.primitive1() * 6;
+        if (null != sketch) {
+            estimate += model.lengthForLongArrayOfSize(sketch.length);
+        }
+        if (null != items) {
+            estimate += model.lengthForObjectArrayOfSize(capacity)
+                    + model.lengthForIntArrayOfSize(capacity) * 3
+                    + model.lengthForLongArrayOfSize(capacity) * 2
+                    + model.lengthForIntArrayOfSize(index.length);
+            for (int i = 0; i < size; i++) {
+                estimate += model.lengthForByteArrayOfSize(items[i].length);
+            }
+        }
+        return (int) estimate;
+    }
+}
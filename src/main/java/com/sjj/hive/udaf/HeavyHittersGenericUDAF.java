@@ -0,0 +1,257 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 返回每组中出现次数最多的k个值及其估计次数，按次数从高到低排列，可代替GROUP BY x后排序的两阶段计算
+ * 使用Count-Min草图估计频次，配合容量为4k的候选表保存高频值，每组的内存只与k有关
+ * 不同值的个数不超过4k时结果是精确的，否则估计次数只会偏大，偏大的部分以约98%的概率不超过总行数的e/(16k)
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "heavy_hitters",
+        value = "_FUNC_(x, k) - Returns an array of structs (item, est_count) of the k most frequent values of x "
+                + "in descending order of the estimated count, k must be between 1 and 1000",
+        extended = "Example:\n"
+                + "  > SELECT domain, _FUNC_(url, 100) FROM table GROUP BY domain;"
+)
+public class HeavyHittersGenericUDAF extends AbstractGenericUDAFResolver {
+    /**
+     * 根据入参获取对应的Evaluator执行器
+     *
+     * @param info
+     * @return
+     * @throws SemanticException
+     */
+    @Override
+    public GenericUDAFEvaluator getEvaluator(TypeInfo[] info) throws SemanticException {
+        if (info.length != 2) {
+            throw new UDFArgumentTypeException(info.length - 1,
+                    "Exactly two arguments are expected.");
+        }
+        for (int i = 0; i < info.length; i++) {
+            if (info[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+                throw new UDFArgumentTypeException(i,
+                        "Only primitive type arguments are accepted but "
+                                + info[i].getTypeName() + " is passed.");
+            }
+        }
+        switch (((PrimitiveTypeInfo) info[0]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+                break;
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only integer or string type arguments are accepted but "
+                                + info[0].getTypeName() + " is passed.");
+        }
+        switch (((PrimitiveTypeInfo) info[1]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return new HeavyHittersEvaluator();
+            default:
+                throw new UDFArgumentTypeException(1,
+                        "The k must be an integer constant but " + info[1].getTypeName() + " is passed.");
+        }
+    }
+
+    /**
+     * 中间数据
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class HeavyHittersBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        final FrequentItems items = new FrequentItems();
+
+        @Override
+        public int estimate() {
+            return items.estimateMemory();
+        }
+    }
+
+    /**
+     * 计算类，部分聚合结果为序列化后的草图及候选表，k通过部分聚合结果传递到PARTIAL2及FINAL阶段
+     */
+    public static class HeavyHittersEvaluator extends GenericUDAFEvaluator {
+        /**
+         * 按入参类型选定的读取器，整数类型转换为十进制字符串
+         */
+        private transient InputReaders.TextReader inputReader;
+        /**
+         * PARTIAL2及FINAL阶段的入参检查器
+         */
+        private transient BinaryObjectInspector partialOI;
+        /**
+         * 新建中间数据时使用的k，PARTIAL2及FINAL阶段为0
+         */
+        private transient int k;
+        /**
+         * 复用的出参对象
+         */
+        private transient BytesWritable partialResult;
+        private transient List<Object[]> result;
+        private transient Object[][] structs;
+
+        /**
+         * 计算开始时调用，执行初始化相关操作
+         *
+         * @param m
+         * @param parameters
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+            super.init(m, parameters);
+
+            // 初始化入参
+            k = 0;
+            if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+                // 当前阶段为PARTIAL1或COMPLETE，则入参数据为Hive函数的入参
+                assert (parameters.length == 2);
+                inputReader = new InputReaders.TextReader((PrimitiveObjectInspector) parameters[0]);
+                if (!(parameters[1] instanceof ConstantObjectInspector)) {
+                    throw new UDFArgumentTypeException(1, "The k of heavy_hitters must be a constant.");
+                }
+                Object value = ((ConstantObjectInspector) parameters[1]).getWritableConstantValue();
+                k = null == value ? 0 : PrimitiveObjectInspectorUtils.getInt(value,
+                        (PrimitiveObjectInspector) parameters[1]);
+                if (k < FrequentItems.MIN_K || k > FrequentItems.MAX_K) {
+                    throw new UDFArgumentTypeException(1, "The k of heavy_hitters must be between "
+                            + FrequentItems.MIN_K + " and " + FrequentItems.MAX_K + ".");
+                }
+            } else {
+                // 当前阶段为PARTIAL2或FINAL，则入参数据为中间结果
+                partialOI = (BinaryObjectInspector) parameters[0];
+            }
+
+            // 初始化出参
+            if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+                partialResult = new BytesWritable();
+                return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+            } else {
+                result = new ArrayList<Object[]>();
+                structs = new Object[0][];
+                return ObjectInspectorFactory.getStandardListObjectInspector(
+                        ObjectInspectorFactory.getStandardStructObjectInspector(
+                                Arrays.asList("item", "est_count"),
+                                Arrays.<ObjectInspector>asList(
+                                        PrimitiveObjectInspectorFactory.writableStringObjectInspector,
+                                        PrimitiveObjectInspectorFactory.writableLongObjectInspector)));
+            }
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            HeavyHittersBuffer buffer = new HeavyHittersBuffer();
+            reset(buffer);
+            return buffer;
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((HeavyHittersBuffer) agg).items.reset(k);
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            assert (parameters.length == 2);
+            if (null != parameters[0]) {
+                Text value = inputReader.get(parameters[0]);
+                ((HeavyHittersBuffer) agg).items.update(value.getBytes(), value.getLength());
+            }
+        }
+
+        /**
+         * 生成部分聚合结果
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+            ((HeavyHittersBuffer) agg).items.serialize(partialResult);
+            return partialResult;
+        }
+
+        /**
+         * 对部分聚合结果进行合并
+         *
+         * @param agg
+         * @param partial
+         * @throws HiveException
+         */
+        @Override
+        public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+            if (null != partial) {
+                BytesWritable writable = partialOI.getPrimitiveWritableObject(partial);
+                ((HeavyHittersBuffer) agg).items.merge(writable.getBytes(), 0, writable.getLength());
+            }
+        }
+
+        /**
+         * 计算最终结果，没有非空输入时返回NULL
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            FrequentItems items = ((HeavyHittersBuffer) agg).items;
+            if (items.getN() == 0L) {
+                return null;
+            }
+            int[] top = items.top();
+            if (structs.length < top.length) {
+                int length = structs.length;
+                structs = Arrays.copyOf(structs, top.length);
+                for (int i = length; i < top.length; i++) {
+                    structs[i] = new Object[]{new Text(), new LongWritable()};
+                }
+            }
+            result.clear();
+            for (int i = 0; i < top.length; i++) {
+                ((Text) structs[i][0]).set(items.getItem(top[i]), 0, items.getLength(top[i]));
+                ((LongWritable) structs[i][1]).set(items.getCount(top[i]));
+                result.add(structs[i]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hive.common.util.Murmur3;
+
+/**
+ * 基于HyperLogLog的近似去重计数，可代替COUNT(DISTINCT x)，不需要按x进行shuffle
+ * 部分聚合结果为序列化后的草图，基数较小时为稀疏格式，最大不超过2^p + 2字节
+ * hll_sketch返回草图本身，可按天保存后通过hll_merge合并为按周的草图，再通过hll_estimate计算基数，不需要重新扫描原始数据
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "hll_count",
+        value = "_FUNC_(x[, p]) - Returns the approximate number of distinct values of x using HyperLogLog "
+                + "with 2^p registers (p between 4 and 16, default 14), the standard error is about 1.04/sqrt(2^p)",
+        extended = "Example:\n"
+                + "  > SELECT dt, _FUNC_(user_id) FROM table GROUP BY dt;"
+)
+public class HllGenericUDAF extends AbstractGenericUDAFResolver {
+    /**
+     * 根据入参获取对应的Evaluator执行器
+     *
+     * @param info
+     * @return
+     * @throws SemanticException
+     */
+    @Override
+    public GenericUDAFEvaluator getEvaluator(TypeInfo[] info) throws SemanticException {
+        if (isSketchInput()) {
+            if (info.length != 1) {
+                throw new UDFArgumentTypeException(info.length - 1,
+                        "Exactly one argument is expected.");
+            }
+        } else if (info.length != 1 && info.length != 2) {
+            throw new UDFArgumentTypeException(info.length - 1,
+                    "One or two arguments are expected.");
+        }
+        for (int i = 0; i < info.length; i++) {
+            if (info[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+                throw new UDFArgumentTypeException(i,
+                        "Only primitive type arguments are accepted but "
+                                + info[i].getTypeName() + " is passed.");
+            }
+        }
+        PrimitiveObjectInspector.PrimitiveCategory category = ((PrimitiveTypeInfo) info[0]).getPrimitiveCategory();
+        if (isSketchInput()) {
+            if (category != PrimitiveObjectInspector.PrimitiveCategory.BINARY) {
+                throw new UDFArgumentTypeException(0,
+                        "Only binary sketches are accepted but " + info[0].getTypeName() + " is passed.");
+            }
+            return new HllEvaluator(true, isSketchOutput());
+        }
+        switch (category) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case DATE:
+            case FLOAT:
+            case DOUBLE:
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+            case BINARY:
+                break;
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only numeric, string, date or binary type arguments are accepted but "
+                                + info[0].getTypeName() + " is passed.");
+        }
+        if (info.length == 2) {
+            switch (((PrimitiveTypeInfo) info[1]).getPrimitiveCategory()) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    break;
+                default:
+                    throw new UDFArgumentTypeException(1,
+                            "The precision must be an integer constant but " + info[1].getTypeName() + " is passed.");
+            }
+        }
+        return new HllEvaluator(false, isSketchOutput());
+    }
+
+    /**
+     * 入参是否为已生成的草图，hll_merge返回true
+     */
+    protected boolean isSketchInput() {
+        return false;
+    }
+
+    /**
+     * 是否返回草图而不是基数，hll_sketch及hll_merge返回true
+     */
+    protected boolean isSketchOutput() {
+        return false;
+    }
+
+    /**
+     * 中间数据
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class HllBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        final HyperLogLog hll = new HyperLogLog();
+
+        @Override
+        public int estimate() {
+            return hll.estimateMemory();
+        }
+    }
+
+    /**
+     * 计算类，PARTIAL1及COMPLETE阶段的入参为原始数据或草图，PARTIAL2及FINAL阶段的入参为草图
+     */
+    public static class HllEvaluator extends GenericUDAFEvaluator {
+        /**
+         * PARTIAL1及COMPLETE阶段的入参是否为草图
+         */
+        private final boolean sketchInput;
+        /**
+         * 最终结果是否为草图
+         */
+        private final boolean sketchOutput;
+        /**
+         * 新建中间数据时使用的精度，入参为草图时为0，即使用合并的第一个草图的精度
+         */
+        private transient int precision;
+        /**
+         * 原始数据的哈希计算器，初始化时根据入参类型选定
+         */
+        private transient InputHasher inputHasher;
+        /**
+         * 草图的入参检查器
+         */
+        private transient BinaryObjectInspector sketchOI;
+        /**
+         * 复用的出参对象
+         */
+        private transient BytesWritable sketchResult;
+        private transient LongWritable countResult;
+
+        public HllEvaluator(boolean sketchInput, boolean sketchOutput) {
+            this.sketchInput = sketchInput;
+            this.sketchOutput = sketchOutput;
+        }
+
+        /**
+         * 计算开始时调用，执行初始化相关操作
+         *
+         * @param m
+         * @param parameters
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+            super.init(m, parameters);
+
+            // 初始化入参
+            precision = 0;
+            if ((m == Mode.PARTIAL1 || m == Mode.COMPLETE) && !sketchInput) {
+                // 当前阶段为PARTIAL1或COMPLETE，则入参数据为Hive函数的入参
+                precision = HyperLogLog.DEFAULT_PRECISION;
+                if (parameters.length == 2) {
+                    if (!(parameters[1] instanceof ConstantObjectInspector)) {
+                        throw new UDFArgumentTypeException(1, "The precision must be a constant.");
+                    }
+                    Object value = ((ConstantObjectInspector) parameters[1]).getWritableConstantValue();
+                    precision = null == value ? 0 : PrimitiveObjectInspectorUtils.getInt(value,
+                            (PrimitiveObjectInspector) parameters[1]);
+                    if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+                        throw new UDFArgumentTypeException(1, "The precision must be between "
+                                + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION + ".");
+                    }
+                }
+                initInput((PrimitiveObjectInspector) parameters[0]);
+            } else {
+                // 当前阶段为PARTIAL2或FINAL，或入参本身为草图
+                sketchOI = (BinaryObjectInspector) parameters[0];
+            }
+
+            // 初始化出参
+            if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2 || sketchOutput) {
+                sketchResult = new BytesWritable();
+                return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+            } else {
+                countResult = new LongWritable();
+                return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+            }
+        }
+
+        /**
+         * 根据入参类型选定哈希计算器
+         */
+        private void initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            switch (inputOI.getPrimitiveCategory()) {
+                case FLOAT:
+                case DOUBLE:
+                    inputHasher = new DoubleHasher(InputReaders.doubleReader(inputOI));
+                    break;
+                case STRING:
+                case VARCHAR:
+                case CHAR:
+                    inputHasher = new TextHasher(new InputReaders.TextReader(inputOI));
+                    break;
+                case BINARY:
+                    inputHasher = new BinaryHasher((BinaryObjectInspector) inputOI);
+                    break;
+                default:
+                    inputHasher = new LongHasher(InputReaders.longReader(inputOI));
+            }
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            HllBuffer buffer = new HllBuffer();
+            reset(buffer);
+            return buffer;
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((HllBuffer) agg).hll.reset(precision);
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            if (null == parameters[0]) {
+                return;
+            }
+            if (sketchInput) {
+                merge(agg, parameters[0]);
+            } else {
+                ((HllBuffer) agg).hll.add(inputHasher.hash(parameters[0]));
+            }
+        }
+
+        /**
+         * 生成部分聚合结果
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+            ((HllBuffer) agg).hll.serialize(sketchResult);
+            return sketchResult;
+        }
+
+        /**
+         * 对部分聚合结果进行合并
+         *
+         * @param agg
+         * @param partial
+         * @throws HiveException
+         */
+        @Override
+        public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+            if (null != partial) {
+                BytesWritable sketch = sketchOI.getPrimitiveWritableObject(partial);
+                ((HllBuffer) agg).hll.merge(sketch.getBytes(), 0, sketch.getLength());
+            }
+        }
+
+        /**
+         * 计算最终结果，返回草图时没有非空入参则返回NULL
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            HyperLogLog hll = ((HllBuffer) agg).hll;
+            if (sketchOutput) {
+                if (hll.isEmpty()) {
+                    return null;
+                }
+                hll.serialize(sketchResult);
+                return sketchResult;
+            }
+            countResult.set(hll.estimate());
+            return countResult;
+        }
+    }
+
+    /**
+     * 计算一个非空入参的64位哈希，不同宽度的整数值相同时哈希相同，浮点数的-0.0与0.0哈希相同
+     */
+    private abstract static class InputHasher {
+        abstract long hash(Object parameter);
+    }
+
+    private static final class LongHasher extends InputHasher {
+        private final InputReaders.LongReader reader;
+
+        LongHasher(InputReaders.LongReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        long hash(Object parameter) {
+            return Murmur3.hash64(reader.get(parameter));
+        }
+    }
+
+    private static final class DoubleHasher extends InputHasher {
+        private final InputReaders.DoubleReader reader;
+
+        DoubleHasher(InputReaders.DoubleReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        long hash(Object parameter) {
+            return Murmur3.hash64(Double.doubleToLongBits(reader.get(parameter) + 0.0));
+        }
+    }
+
+    private static final class TextHasher extends InputHasher {
+        private final InputReaders.TextReader reader;
+
+        TextHasher(InputReaders.TextReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        long hash(Object parameter) {
+            Text value = reader.get(parameter);
+            return Murmur3.hash64(value.getBytes(), 0, value.getLength());
+        }
+    }
+
+    private static final class BinaryHasher extends InputHasher {
+        private final BinaryObjectInspector oi;
+
+        BinaryHasher(BinaryObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        long hash(Object parameter) {
+            BytesWritable value = oi.getPrimitiveWritableObject(parameter);
+            return Murmur3.hash64(value.getBytes(), 0, value.getLength());
+        }
+    }
+}
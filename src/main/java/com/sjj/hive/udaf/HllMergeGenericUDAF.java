@@ -0,0 +1,29 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * 合并hll_sketch生成的草图，合并的草图精度必须相同
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "hll_merge",
+        value = "_FUNC_(sketch) - Returns the union of HyperLogLog sketches with the same precision, "
+                + "or NULL if there is no non-empty sketch",
+        extended = "Example:\n"
+                + "  > SELECT week, hll_estimate(_FUNC_(sketch)) FROM daily_uv GROUP BY week;"
+)
+public class HllMergeGenericUDAF extends HllGenericUDAF {
+    @Override
+    protected boolean isSketchInput() {
+        return true;
+    }
+
+    @Override
+    protected boolean isSketchOutput() {
+        return true;
+    }
+}
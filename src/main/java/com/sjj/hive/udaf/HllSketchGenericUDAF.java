@@ -0,0 +1,24 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * 生成HyperLogLog草图，计算逻辑与hll_count一致，结果可保存后通过hll_merge及hll_estimate汇总
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "hll_sketch",
+        value = "_FUNC_(x[, p]) - Returns the HyperLogLog sketch of x with 2^p registers (p between 4 and 16, "
+                + "default 14), or NULL if there is no non-null value",
+        extended = "Example:\n"
+                + "  > INSERT OVERWRITE TABLE daily_uv SELECT dt, _FUNC_(user_id) FROM table GROUP BY dt;"
+)
+public class HllSketchGenericUDAF extends HllGenericUDAF {
+    @Override
+    protected boolean isSketchOutput() {
+        return true;
+    }
+}
@@ -0,0 +1,292 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.io.BytesWritable;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog基数估计，使用2^p个寄存器，每个寄存器保存落入该桶的64位哈希值的最大前导零个数加1，标准误差约为1.04/sqrt(2^p)
+ * 基数较小时使用稀疏表示，只保存非零的寄存器，非零寄存器超过2^p/8个时转换为每个寄存器一个字节的稠密数组
+ * 序列化格式为[格式][p][内容]，稀疏格式的内容为[个数][每个寄存器(下标 << 6 | 值)]，稠密格式的内容为全部寄存器
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+public final class HyperLogLog {
+    /**
+     * 精度的取值范围及默认值
+     */
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+    public static final int DEFAULT_PRECISION = 14;
+
+    /**
+     * 序列化格式
+     */
+    private static final byte FORMAT_EMPTY = 0;
+    private static final byte FORMAT_SPARSE = 1;
+    private static final byte FORMAT_DENSE = 2;
+
+    /**
+     * 精度，为0时表示尚未确定精度，此时只能合并其他草图
+     */
+    private int p;
+
+    /**
+     * 稠密表示的寄存器，在第一次转换为稠密表示时分配
+     */
+    private byte[] registers;
+
+    /**
+     * 当前是否为稠密表示，重置为稀疏表示后registers仍保留以便复用
+     */
+    private boolean dense;
+
+    /**
+     * 稀疏表示的寄存器，为开放寻址的哈希表，每个元素为(下标 << 6 | 值)，0表示空位
+     */
+    private int[] sparse = new int[16];
+    private int sparseSize;
+
+    /**
+     * 创建一个尚未确定精度的空草图
+     */
+    public HyperLogLog() {
+    }
+
+    /**
+     * 创建一个指定精度的空草图
+     *
+     * @param p
+     */
+    public HyperLogLog(int p) {
+        reset(p);
+    }
+
+    /**
+     * 清空草图并设置精度，精度与上次转换为稠密表示时相同则复用已分配的寄存器数组
+     *
+     * @param p 为0时表示精度由之后合并的第一个草图决定
+     */
+    public void reset(int p) {
+        if (p != 0 && (p < MIN_PRECISION || p > MAX_PRECISION)) {
+            throw new IllegalArgumentException("The precision of HyperLogLog must be between "
+                    + MIN_PRECISION + " and " + MAX_PRECISION + ", got " + p);
+        }
+        if (null != registers) {
+            Arrays.fill(registers, (byte) 0);
+        }
+        this.p = p;
+        Arrays.fill(sparse, 0);
+        sparseSize = 0;
+        dense = false;
+    }
+
+    public int getPrecision() {
+        return p;
+    }
+
+    /**
+     * 草图是否没有加入过任何值
+     */
+    public boolean isEmpty() {
+        return !dense && sparseSize == 0;
+    }
+
+    /**
+     * 加入一个值的64位哈希
+     *
+     * @param hash
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - p));
+        // 低位补1，保证前导零个数不超过64 - p
+        int value = Long.numberOfLeadingZeros((hash << p) | (1L << (p - 1))) + 1;
+        update(index, value);
+    }
+
+    private void update(int index, int value) {
+        if (dense) {
+            if (registers[index] < value) {
+                registers[index] = (byte) value;
+            }
+            return;
+        }
+        int mask = sparse.length - 1;
+        int slot = (index * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(sparse.length)) & mask;
+        while (sparse[slot] != 0) {
+            if (sparse[slot] >>> 6 == index) {
+                if ((sparse[slot] & 0x3F) < value) {
+                    sparse[slot] = index << 6 | value;
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        sparse[slot] = index << 6 | value;
+        sparseSize++;
+        if (sparseSize > (1 << p) >>> 3) {
+            toDense();
+        } else if (sparseSize * 2 > sparse.length) {
+            int[] old = sparse;
+            sparse = new int[old.length * 2];
+            sparseSize = 0;
+            for (int entry : old) {
+                if (entry != 0) {
+                    update(entry >>> 6, entry & 0x3F);
+                }
+            }
+        }
+    }
+
+    private void toDense() {
+        if (null == registers || registers.length != 1 << p) {
+            registers = new byte[1 << p];
+        }
+        dense = true;
+        for (int entry : sparse) {
+            if (entry != 0) {
+                update(entry >>> 6, entry & 0x3F);
+            }
+        }
+        Arrays.fill(sparse, 0);
+        sparseSize = 0;
+    }
+
+    /**
+     * 合并序列化后的草图，未确定精度时使用该草图的精度
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws HiveException
+     */
+    public void merge(byte[] bytes, int offset, int length) throws HiveException {
+        if (length < 2) {
+            throw new HiveException("Invalid HyperLogLog sketch, got " + length + " bytes");
+        }
+        byte format = bytes[offset];
+        int otherP = bytes[offset + 1];
+        if (format == FORMAT_EMPTY) {
+            return;
+        }
+        if (otherP < MIN_PRECISION || otherP > MAX_PRECISION) {
+            throw new HiveException("Invalid HyperLogLog sketch precision " + otherP);
+        }
+        if (p == 0) {
+            reset(otherP);
+        } else if (otherP != p) {
+            throw new HiveException("Cannot merge HyperLogLog sketches with different precisions "
+                    + p + " and " + otherP);
+        }
+        if (format == FORMAT_SPARSE) {
+            int count = length < 6 ? -1 : BinaryCodec.readInt(bytes, offset + 2);
+            if (count < 0 || length != 6 + count * 4) {
+                throw new HiveException("Invalid sparse HyperLogLog sketch, got " + length + " bytes");
+            }
+            for (int i = 0; i < count; i++) {
+                int entry = BinaryCodec.readInt(bytes, offset + 6 + i * 4);
+                // 损坏的草图中下标可能越界，稠密模式下会直接访问寄存器数组
+                if (entry >>> 6 >= 1 << p) {
+                    throw new HiveException("Invalid sparse HyperLogLog sketch entry " + entry
+                            + " for precision " + p);
+                }
+                update(entry >>> 6, entry & 0x3F);
+            }
+        } else if (format == FORMAT_DENSE && length == 2 + (1 << p)) {
+            if (!dense) {
+                toDense();
+            }
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] < bytes[offset + 2 + i]) {
+                    registers[i] = bytes[offset + 2 + i];
+                }
+            }
+        } else {
+            throw new HiveException("Invalid HyperLogLog sketch, got format " + format + " and " + length + " bytes");
+        }
+    }
+
+    /**
+     * 将草图序列化到复用的BytesWritable中
+     *
+     * @param result
+     */
+    public void serialize(BytesWritable result) {
+        if (isEmpty()) {
+            result.setSize(2);
+            result.getBytes()[0] = FORMAT_EMPTY;
+        } else if (dense) {
+            result.setSize(2 + registers.length);
+            result.getBytes()[0] = FORMAT_DENSE;
+            System.arraycopy(registers, 0, result.getBytes(), 2, registers.length);
+        } else {
+            result.setSize(6 + sparseSize * 4);
+            byte[] bytes = result.getBytes();
+            bytes[0] = FORMAT_SPARSE;
+            BinaryCodec.writeInt(bytes, 2, sparseSize);
+            int offset = 6;
+            for (int entry : sparse) {
+                if (entry != 0) {
+                    BinaryCodec.writeInt(bytes, offset, entry);
+                    offset += 4;
+                }
+            }
+        }
+        result.getBytes()[1] = (byte) p;
+    }
+
+    /**
+     * 估计加入的不同值的个数，基数较小时使用线性计数修正
+     *
+     * @return
+     */
+    public long estimate() {
+        if (isEmpty()) {
+            return 0L;
+        }
+        int m = 1 << p;
+        double sum;
+        int zeros;
+        if (dense) {
+            sum = 0.0;
+            zeros = 0;
+            for (byte register : registers) {
+                sum += Double.longBitsToDouble((1023L - register) << 52);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        } else {
+            // 稀疏表示中未出现的寄存器为0
+            zeros = m - sparseSize;
+            sum = zeros;
+            for (int entry : sparse) {
+                if (entry != 0) {
+                    sum += Double.longBitsToDouble((1023L - (entry & 0x3F)) << 52);
+                }
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1.0 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * 估计占用的内存
+     *
+     * @return
+     */
+    public int estimateMemory() {
+        JavaDataModel model = JavaDataModel.get();
+        return (int) (model.object() + model.ref() * 2 + model.primitive1() * 3
+                + model.lengthForIntArrayOfSize(sparse.length)
+                + (null == registers ? 0 : model.lengthForByteArrayOfSize(registers.length)));
+    }
+}
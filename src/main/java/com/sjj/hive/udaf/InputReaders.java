@@ -0,0 +1,314 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ByteObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DateObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.FloatObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ShortObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.TimestampObjectInspector;
+import org.apache.hadoop.io.Text;
+
+/**
+ * 读取UDAF入参的读取器，在初始化时按入参类型选定具体的实现
+ * 每个实现只对应一种对象检查器，计算时一次调用即可读出基本类型的值，不再每行判断入参类型
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+final class InputReaders {
+    private InputReaders() {
+        // 避免实例化
+    }
+
+    /**
+     * 读取整数值
+     */
+    abstract static class LongReader {
+        /**
+         * @param o 非空的入参
+         * @return  入参的整数值
+         */
+        abstract long get(Object o);
+    }
+
+    /**
+     * 读取浮点数值
+     */
+    abstract static class DoubleReader {
+        /**
+         * @param o 非空的入参
+         * @return  入参的浮点数值
+         */
+        abstract double get(Object o);
+    }
+
+    /**
+     * 读取字符串，string类型直接返回检查器中的Text，varchar、char及整数等其余类型先转换为string
+     */
+    static final class TextReader {
+        private final StringObjectInspector stringOI;
+        private final ObjectInspectorConverters.Converter converter;
+
+        TextReader(PrimitiveObjectInspector inputOI) {
+            if (inputOI instanceof StringObjectInspector) {
+                stringOI = (StringObjectInspector) inputOI;
+                converter = null;
+            } else {
+                stringOI = null;
+                converter = ObjectInspectorConverters.getConverter(inputOI,
+                        PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+            }
+        }
+
+        /**
+         * @param o 非空的入参
+         * @return  入参的字符串，返回的对象可能在各行之间复用
+         */
+        Text get(Object o) {
+            return null != stringOI ? stringOI.getPrimitiveWritableObject(o) : (Text) converter.convert(o);
+        }
+    }
+
+    /**
+     * 创建整数值的读取器，date读取为距1970-01-01的天数
+     *
+     * @param inputOI   tinyint/smallint/int/bigint/date类型的检查器
+     * @return
+     * @throws UDFArgumentTypeException
+     */
+    static LongReader longReader(PrimitiveObjectInspector inputOI) throws UDFArgumentTypeException {
+        switch (inputOI.getPrimitiveCategory()) {
+            case BYTE:
+                return new ByteLongReader((ByteObjectInspector) inputOI);
+            case SHORT:
+                return new ShortLongReader((ShortObjectInspector) inputOI);
+            case INT:
+                return new IntLongReader((IntObjectInspector) inputOI);
+            case LONG:
+                return new LongLongReader((LongObjectInspector) inputOI);
+            case DATE:
+                return new DateLongReader((DateObjectInspector) inputOI);
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only integer or date type arguments are accepted but " + inputOI.getTypeName() + " is passed.");
+        }
+    }
+
+    /**
+     * 创建浮点数值的读取器，字符串解析为double，timestamp以秒为单位(包含小数部分)
+     *
+     * @param inputOI   数值、字符串或timestamp类型的检查器
+     * @return
+     * @throws UDFArgumentTypeException
+     */
+    static DoubleReader doubleReader(PrimitiveObjectInspector inputOI) throws UDFArgumentTypeException {
+        switch (inputOI.getPrimitiveCategory()) {
+            case BYTE:
+                return new ByteDoubleReader((ByteObjectInspector) inputOI);
+            case SHORT:
+                return new ShortDoubleReader((ShortObjectInspector) inputOI);
+            case INT:
+                return new IntDoubleReader((IntObjectInspector) inputOI);
+            case LONG:
+                return new LongDoubleReader((LongObjectInspector) inputOI);
+            case FLOAT:
+                return new FloatDoubleReader((FloatObjectInspector) inputOI);
+            case DOUBLE:
+                return new DoubleDoubleReader((DoubleObjectInspector) inputOI);
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+                return new StringDoubleReader(inputOI);
+            case TIMESTAMP:
+                return new TimestampDoubleReader((TimestampObjectInspector) inputOI);
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only numeric, string or timestamp type arguments are accepted but "
+                                + inputOI.getTypeName() + " is passed.");
+        }
+    }
+
+    private static final class ByteLongReader extends LongReader {
+        private final ByteObjectInspector oi;
+
+        ByteLongReader(ByteObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        long get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class ShortLongReader extends LongReader {
+        private final ShortObjectInspector oi;
+
+        ShortLongReader(ShortObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        long get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class IntLongReader extends LongReader {
+        private final IntObjectInspector oi;
+
+        IntLongReader(IntObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        long get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class LongLongReader extends LongReader {
+        private final LongObjectInspector oi;
+
+        LongLongReader(LongObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        long get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class DateLongReader extends LongReader {
+        private final DateObjectInspector oi;
+
+        DateLongReader(DateObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        long get(Object o) {
+            return oi.getPrimitiveWritableObject(o).getDays();
+        }
+    }
+
+    private static final class ByteDoubleReader extends DoubleReader {
+        private final ByteObjectInspector oi;
+
+        ByteDoubleReader(ByteObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        double get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class ShortDoubleReader extends DoubleReader {
+        private final ShortObjectInspector oi;
+
+        ShortDoubleReader(ShortObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        double get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class IntDoubleReader extends DoubleReader {
+        private final IntObjectInspector oi;
+
+        IntDoubleReader(IntObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        double get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class LongDoubleReader extends DoubleReader {
+        private final LongObjectInspector oi;
+
+        LongDoubleReader(LongObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        double get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class FloatDoubleReader extends DoubleReader {
+        private final FloatObjectInspector oi;
+
+        FloatDoubleReader(FloatObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        double get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    private static final class DoubleDoubleReader extends DoubleReader {
+        private final DoubleObjectInspector oi;
+
+        DoubleDoubleReader(DoubleObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        double get(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    /**
+     * string类型直接读取，varchar及char类型需要先转换为字符串，无法解析时抛出NumberFormatException
+     */
+    private static final class StringDoubleReader extends DoubleReader {
+        private final PrimitiveObjectInspector oi;
+        private final StringObjectInspector stringOI;
+
+        StringDoubleReader(PrimitiveObjectInspector oi) {
+            this.oi = oi;
+            this.stringOI = oi instanceof StringObjectInspector ? (StringObjectInspector) oi : null;
+        }
+
+        @Override
+        double get(Object o) {
+            String str = null != stringOI ? stringOI.getPrimitiveJavaObject(o) : PrimitiveObjectInspectorUtils.getString(o, oi);
+            return Double.parseDouble(str);
+        }
+    }
+
+    private static final class TimestampDoubleReader extends DoubleReader {
+        private final TimestampObjectInspector oi;
+
+        TimestampDoubleReader(TimestampObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        double get(Object o) {
+            return oi.getPrimitiveWritableObject(o).getDouble();
+        }
+    }
+}
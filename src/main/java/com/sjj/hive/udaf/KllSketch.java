@@ -0,0 +1,318 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.io.BytesWritable;
+
+import java.util.Arrays;
+
+/**
+ * KLL分位数草图，由多层double[]压缩器组成，第h层的每个值代表2^h个原始值
+ * 各层总容量约为3k，超出时对第一个已满的层排序，随机保留奇数位或偶数位上的值并上移一层，因此内存只与k有关，与数据量无关
+ * 秩误差与k成反比，k=200时归一化秩误差约为1.3%(99%置信度)，k每增加一倍误差约减半
+ * 序列化格式为[k][n][min][max][层数][各层的个数][各层的值]
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+final class KllSketch {
+    /**
+     * k的取值范围及默认值
+     */
+    static final int MIN_K = 8;
+    static final int MAX_K = 65535;
+    static final int DEFAULT_K = 200;
+
+    /**
+     * 层数上限，第h层的每个值代表2^h个输入，n为long时层数不会超过64
+     */
+    private static final int MAX_LEVELS = 64;
+
+    /**
+     * 相邻两层容量的比值
+     */
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+    /**
+     * 固定的随机数种子，保证相同的输入得到相同的结果
+     */
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    /**
+     * 最高层的容量，为0时表示尚未确定k，此时只能合并其他草图
+     */
+    private int k;
+
+    /**
+     * 加入的值的个数及最小值、最大值
+     */
+    private long n;
+    private double min;
+    private double max;
+
+    /**
+     * 各层的值及个数
+     */
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    private int numLevels;
+
+    /**
+     * 各层的容量及总容量，层数变化时重新计算
+     */
+    private int[] capacities = new int[0];
+    private int totalCapacity;
+    private int totalSize;
+
+    /**
+     * xorshift随机数的状态
+     */
+    private long random;
+
+    /**
+     * 清空草图并设置k，已分配的数组保留复用
+     *
+     * @param k 为0时表示k由之后合并的第一个草图决定
+     */
+    void reset(int k) {
+        this.k = k;
+        n = 0L;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        Arrays.fill(sizes, 0);
+        numLevels = 0;
+        totalSize = 0;
+        random = SEED;
+        if (k != 0) {
+            addLevel();
+        }
+    }
+
+    long getN() {
+        return n;
+    }
+
+    /**
+     * 加入一个值，NaN会被忽略
+     *
+     * @param value
+     */
+    void update(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        n++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        append(0, value);
+        compress();
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+        totalSize++;
+    }
+
+    /**
+     * 增加一层，并按新的层数重新计算各层容量，越低的层容量越小，最低不小于2
+     */
+    private void addLevel() {
+        if (numLevels == levels.length) {
+            int length = numLevels + 4;
+            levels = Arrays.copyOf(levels, length);
+            sizes = Arrays.copyOf(sizes, length);
+            capacities = Arrays.copyOf(capacities, length);
+        }
+        sizes[numLevels] = 0;
+        numLevels++;
+        updateCapacities();
+    }
+
+    /**
+     * 按当前的k及层数计算各层容量
+     */
+    private void updateCapacities() {
+        totalCapacity = 0;
+        for (int h = 0; h < numLevels; h++) {
+            capacities[h] = Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, numLevels - 1 - h)));
+            totalCapacity += capacities[h];
+            if (null == levels[h]) {
+                levels[h] = new double[capacities[h] + 1];
+            }
+        }
+    }
+
+    /**
+     * 总个数超出总容量时，压缩第一个已满的层
+     */
+    private void compress() {
+        while (totalSize > totalCapacity) {
+            for (int h = 0; h < numLevels; h++) {
+                if (sizes[h] >= capacities[h]) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 对一层排序后随机保留奇数位或偶数位上的值并上移一层，个数为奇数时最大的值留在本层
+     */
+    private void compact(int level) {
+        if (level == numLevels - 1) {
+            addLevel();
+        }
+        double[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+        int odd = size & 1;
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        for (int i = (int) (random & 1L); i < size - odd; i += 2) {
+            append(level + 1, values[i]);
+        }
+        if (odd == 1) {
+            values[0] = values[size - 1];
+        }
+        totalSize -= size - odd;
+        sizes[level] = odd;
+    }
+
+    /**
+     * 合并序列化后的草图，k不同时使用较小的k
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws HiveException
+     */
+    void merge(byte[] bytes, int offset, int length) throws HiveException {
+        if (length < 32) {
+            throw new HiveException("Invalid KLL sketch, got " + length + " bytes");
+        }
+        int otherK = BinaryCodec.readInt(bytes, offset);
+        long otherN = BinaryCodec.readLong(bytes, offset + 4);
+        int otherLevels = BinaryCodec.readInt(bytes, offset + 28);
+        if (otherN == 0L) {
+            return;
+        }
+        if (otherK < MIN_K || otherK > MAX_K || otherLevels <= 0 || otherLevels > MAX_LEVELS
+                || length < 32 + otherLevels * 4) {
+            throw new HiveException("Invalid KLL sketch, got k " + otherK + " and " + otherLevels + " levels");
+        }
+        if (k == 0) {
+            reset(otherK);
+        } else if (otherK < k) {
+            k = otherK;
+            updateCapacities();
+        }
+        n += otherN;
+        min = Math.min(min, Double.longBitsToDouble(BinaryCodec.readLong(bytes, offset + 12)));
+        max = Math.max(max, Double.longBitsToDouble(BinaryCodec.readLong(bytes, offset + 20)));
+        while (numLevels < otherLevels) {
+            addLevel();
+        }
+        int position = offset + 32 + otherLevels * 4;
+        for (int h = 0; h < otherLevels; h++) {
+            int size = BinaryCodec.readInt(bytes, offset + 32 + h * 4);
+            // 按long比较，避免损坏的个数溢出后通过长度校验
+            if (size < 0 || position + size * 8L > (long) offset + length) {
+                throw new HiveException("Invalid KLL sketch, level " + h + " exceeds " + length + " bytes");
+            }
+            for (int i = 0; i < size; i++) {
+                append(h, Double.longBitsToDouble(BinaryCodec.readLong(bytes, position)));
+                position += 8;
+            }
+        }
+        compress();
+    }
+
+    /**
+     * 将草图序列化到复用的BytesWritable中，offset之前的字节由调用方写入
+     *
+     * @param result
+     * @param offset
+     */
+    void serialize(BytesWritable result, int offset) {
+        result.setSize(offset + 32 + numLevels * 4 + totalSize * 8);
+        byte[] bytes = result.getBytes();
+        BinaryCodec.writeInt(bytes, offset, k);
+        BinaryCodec.writeLong(bytes, offset + 4, n);
+        BinaryCodec.writeLong(bytes, offset + 12, Double.doubleToLongBits(min));
+        BinaryCodec.writeLong(bytes, offset + 20, Double.doubleToLongBits(max));
+        BinaryCodec.writeInt(bytes, offset + 28, numLevels);
+        int position = offset + 32 + numLevels * 4;
+        for (int h = 0; h < numLevels; h++) {
+            BinaryCodec.writeInt(bytes, offset + 32 + h * 4, sizes[h]);
+            for (int i = 0; i < sizes[h]; i++) {
+                BinaryCodec.writeLong(bytes, position, Double.doubleToLongBits(levels[h][i]));
+                position += 8;
+            }
+        }
+    }
+
+    /**
+     * 计算多个分位数，分位数为0及1时返回精确的最小值及最大值
+     *
+     * @param fractions 0到1之间的分位数
+     * @param results   各分位数的结果
+     */
+    void getQuantiles(double[] fractions, double[] results) {
+        // 各层排序后归并，得到按值排序的数组及累计权重
+        double[] values = new double[totalSize];
+        long[] weights = new long[totalSize];
+        int[] positions = new int[numLevels];
+        for (int h = 0; h < numLevels; h++) {
+            Arrays.sort(levels[h], 0, sizes[h]);
+        }
+        long cumulative = 0L;
+        for (int i = 0; i < totalSize; i++) {
+            int minLevel = -1;
+            for (int h = 0; h < numLevels; h++) {
+                if (positions[h] < sizes[h]
+                        && (minLevel < 0 || levels[h][positions[h]] < levels[minLevel][positions[minLevel]])) {
+                    minLevel = h;
+                }
+            }
+            values[i] = levels[minLevel][positions[minLevel]++];
+            cumulative += 1L << minLevel;
+            weights[i] = cumulative;
+        }
+        for (int q = 0; q < fractions.length; q++) {
+            if (fractions[q] <= 0.0) {
+                results[q] = min;
+            } else if (fractions[q] >= 1.0) {
+                results[q] = max;
+            } else {
+                // 第一个累计权重不小于fraction * n的值
+                long rank = (long) Math.ceil(fractions[q] * n);
+                int index = Arrays.binarySearch(weights, rank);
+                results[q] = values[Math.min(index < 0 ? -index - 1 : index, totalSize - 1)];
+            }
+        }
+    }
+
+    /**
+     * 估计占用的内存
+     *
+     * @return
+     */
+    int estimateMemory() {
+        JavaDataModel model = JavaDataModel.get();
+        long estimate = model.object() + model.ref() * 3 + model.primitive2() * 4 + model.primitive1() * 4
+                + model.lengthForObjectArrayOfSize(levels.length)
+                + model.lengthForIntArrayOfSize(sizes.length) * 2;
+        for (double[] level : levels) {
+            if (null != level) {
+                estimate += model.lengthForDoubleArrayOfSize(level.length);
+            }
+        }
+        return (int) estimate;
+    }
+}
@@ -0,0 +1,481 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.io.HiveBaseCharWritable;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.objectinspector.StandardUnionObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 返回key最大的行对应的value，key相同时保留最先出现的行
+ * 中间数据只保存基本类型的key及value的副本，只有key变大时才复制value，不需要比较整个struct
+ * 部分聚合结果为struct<key, value>，可以在map端的hash聚合中完成计算
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "max_by",
+        value = "_FUNC_(value, key) - Returns the value of the row where key is maximal",
+        extended = "Example:\n"
+                + "  > SELECT class, _FUNC_(name, score) FROM table GROUP BY class;"
+)
+public class MaxByGenericUDAF extends AbstractGenericUDAFResolver {
+    /**
+     * 根据入参获取对应的Evaluator执行器
+     *
+     * @param info
+     * @return
+     * @throws SemanticException
+     */
+    @Override
+    public GenericUDAFEvaluator getEvaluator(TypeInfo[] info) throws SemanticException {
+        if (info.length != 2) {
+            throw new UDFArgumentTypeException(info.length - 1,
+                    "Exactly two arguments are expected.");
+        }
+
+        if (info[1].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+            throw new UDFArgumentTypeException(1,
+                    "Only primitive type keys are accepted but "
+                            + info[1].getTypeName() + " is passed.");
+        }
+        switch (((PrimitiveTypeInfo) info[1]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case DATE:
+                return new MaxByLongEvaluator(isMax());
+            case FLOAT:
+            case DOUBLE:
+                return new MaxByDoubleEvaluator(isMax());
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+                return new MaxByStringEvaluator(isMax());
+            default:
+                throw new UDFArgumentTypeException(1,
+                        "Only numeric, string or date type keys are accepted but "
+                                + info[1].getTypeName() + " is passed.");
+        }
+    }
+
+    /**
+     * 是否取key最大的行，min_by返回false
+     */
+    protected boolean isMax() {
+        return true;
+    }
+
+    /**
+     * 中间数据，根据key的类型只使用longKey、doubleKey及keyBytes中的一个
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class MaxByBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        boolean empty = true;
+        long longKey;
+        double doubleKey;
+        byte[] keyBytes;
+        int keyLength;
+        /**
+         * value的副本，为标准的writable对象
+         */
+        Object value;
+        /**
+         * value副本的估算内存大小，在复制value时计算，避免每次估算都遍历value
+         */
+        long valueSize;
+
+        /**
+         * 估算中间数据占用的内存，用于map端hash聚合判断是否需要刷写
+         *
+         * @return
+         */
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            long size = JavaDataModel.alignUp(model.object() + model.primitive1() * 2 + model.primitive2() * 3
+                    + model.ref() * 2, model.memoryAlign());
+            if (null != keyBytes) {
+                size += model.lengthForByteArrayOfSize(keyBytes.length);
+            }
+            return (int) Math.min(size + valueSize, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 估算标准writable对象占用的内存，复杂类型递归累加各元素的大小
+     *
+     * @param o     copyToStandardObject生成的对象
+     * @param model
+     * @return
+     */
+    static long estimateValue(Object o, JavaDataModel model) {
+        if (null == o) {
+            return 0;
+        }
+        if (o instanceof Text) {
+            return model.object() + model.ref() + model.primitive1()
+                    + model.lengthForByteArrayOfSize(((Text) o).getBytes().length);
+        }
+        if (o instanceof BytesWritable) {
+            return model.object() + model.ref() + model.primitive1()
+                    + model.lengthForByteArrayOfSize(((BytesWritable) o).getCapacity());
+        }
+        if (o instanceof HiveBaseCharWritable) {
+            return model.object() + model.ref() + estimateValue(((HiveBaseCharWritable) o).getTextValue(), model);
+        }
+        if (o instanceof HiveDecimalWritable) {
+            return model.lengthOfDecimal();
+        }
+        if (o instanceof List) {
+            // list及struct均为ArrayList
+            List<?> list = (List<?>) o;
+            long size = model.arrayList() + model.lengthForObjectArrayOfSize(list.size());
+            for (Object element : list) {
+                size += estimateValue(element, model);
+            }
+            return size;
+        }
+        if (o instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) o;
+            long size = model.hashMap(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimateValue(entry.getKey(), model) + estimateValue(entry.getValue(), model);
+            }
+            return size;
+        }
+        if (o instanceof StandardUnionObjectInspector.StandardUnion) {
+            return model.object() + model.ref() + model.primitive1()
+                    + estimateValue(((StandardUnionObjectInspector.StandardUnion) o).getObject(), model);
+        }
+        // 其余基本类型的writable对象只包含定长的字段
+        return model.object() + model.primitive2();
+    }
+
+    /**
+     * 各key类型计算类的公共部分
+     * PARTIAL2及FINAL阶段的key为部分聚合结果中的key字段，因此读取key的逻辑与PARTIAL1及COMPLETE阶段一致
+     */
+    public abstract static class AbstractMaxByEvaluator extends GenericUDAFEvaluator {
+        /**
+         * 为true时取key最大的行，为false时取key最小的行
+         */
+        protected final boolean max;
+        /**
+         * value的检查器，PARTIAL2及FINAL阶段为部分聚合结果中value字段的检查器
+         */
+        private transient ObjectInspector valueOI;
+        /**
+         * PARTIAL2及FINAL阶段的入参检查器
+         */
+        private transient StructObjectInspector partialOI;
+        private transient StructField keyField;
+        private transient StructField valueField;
+        /**
+         * 复用的部分聚合结果
+         */
+        private transient Object[] partialResult;
+
+        protected AbstractMaxByEvaluator(boolean max) {
+            this.max = max;
+        }
+
+        /**
+         * 计算开始时调用，执行初始化相关操作
+         *
+         * @param m
+         * @param parameters
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+            super.init(m, parameters);
+
+            // 初始化入参
+            ObjectInspector keyOI;
+            if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+                // 当前阶段为PARTIAL1或COMPLETE，则入参数据为Hive函数的入参
+                assert (parameters.length == 2);
+                valueOI = parameters[0];
+                keyOI = parameters[1];
+            } else {
+                // 当前阶段为PARTIAL2或FINAL，则入参数据为中间结果
+                partialOI = (StructObjectInspector) parameters[0];
+                keyField = partialOI.getStructFieldRef("key");
+                valueField = partialOI.getStructFieldRef("value");
+                valueOI = valueField.getFieldObjectInspector();
+                keyOI = keyField.getFieldObjectInspector();
+            }
+            ObjectInspector partialKeyOI = initKey((PrimitiveObjectInspector) keyOI);
+            ObjectInspector outputOI = ObjectInspectorUtils.getStandardObjectInspector(valueOI,
+                    ObjectInspectorUtils.ObjectInspectorCopyOption.WRITABLE);
+
+            // 初始化出参
+            if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+                partialResult = new Object[2];
+                return ObjectInspectorFactory.getStandardStructObjectInspector(
+                        Arrays.asList("key", "value"), Arrays.asList(partialKeyOI, outputOI));
+            } else {
+                return outputOI;
+            }
+        }
+
+        /**
+         * 根据key的检查器准备读取key所需的对象，并返回部分聚合结果中key的检查器
+         *
+         * @param keyOI
+         * @return
+         * @throws HiveException
+         */
+        protected abstract ObjectInspector initKey(PrimitiveObjectInspector keyOI) throws HiveException;
+
+        /**
+         * 用一个非空key更新中间数据，key变大(min_by为变小)时返回true
+         *
+         * @param agg
+         * @param key
+         * @return
+         * @throws HiveException
+         */
+        protected abstract boolean update(MaxByBuffer agg, Object key) throws HiveException;
+
+        /**
+         * 将中间数据中的key写入复用的对象
+         *
+         * @param agg
+         * @return
+         */
+        protected abstract Object keyResult(MaxByBuffer agg);
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new MaxByBuffer();
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            MaxByBuffer myagg = (MaxByBuffer) agg;
+            myagg.empty = true;
+            myagg.keyLength = 0;
+            myagg.value = null;
+            myagg.valueSize = 0;
+        }
+
+        /**
+         * key变大时复制value，key为NULL的行不参与计算
+         */
+        private void update(MaxByBuffer agg, Object key, Object value) throws HiveException {
+            if (null != key && update(agg, key)) {
+                agg.value = ObjectInspectorUtils.copyToStandardObject(value, valueOI,
+                        ObjectInspectorUtils.ObjectInspectorCopyOption.WRITABLE);
+                agg.valueSize = estimateValue(agg.value, JavaDataModel.get());
+            }
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            assert (parameters.length == 2);
+            update((MaxByBuffer) agg, parameters[1], parameters[0]);
+        }
+
+        /**
+         * 生成部分聚合结果，没有key非空的行时返回NULL
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+            MaxByBuffer myagg = (MaxByBuffer) agg;
+            if (myagg.empty) {
+                return null;
+            }
+            partialResult[0] = keyResult(myagg);
+            partialResult[1] = myagg.value;
+            return partialResult;
+        }
+
+        /**
+         * 对部分聚合结果进行合并
+         *
+         * @param agg
+         * @param partial
+         * @throws HiveException
+         */
+        @Override
+        public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+            if (null != partial) {
+                update((MaxByBuffer) agg, partialOI.getStructFieldData(partial, keyField),
+                        partialOI.getStructFieldData(partial, valueField));
+            }
+        }
+
+        /**
+         * 计算最终结果
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            return ((MaxByBuffer) agg).value;
+        }
+    }
+
+    /**
+     * 针对整数类型(tinyint/smallint/int/bigint)及date类型key的计算类
+     */
+    public static class MaxByLongEvaluator extends AbstractMaxByEvaluator {
+        /**
+         * 复用max_udaf_gen中读取key及生成key的逻辑
+         */
+        private transient MaxGenericUDAF.MaxLongEvaluator keyReader;
+
+        public MaxByLongEvaluator(boolean max) {
+            super(max);
+        }
+
+        @Override
+        protected ObjectInspector initKey(PrimitiveObjectInspector keyOI) throws HiveException {
+            keyReader = new MaxGenericUDAF.MaxLongEvaluator();
+            return keyReader.init(Mode.COMPLETE, new ObjectInspector[]{keyOI});
+        }
+
+        @Override
+        protected boolean update(MaxByBuffer agg, Object key) throws HiveException {
+            long value = keyReader.getLong(key);
+            if (agg.empty || (max ? value > agg.longKey : value < agg.longKey)) {
+                agg.longKey = value;
+                agg.empty = false;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected Object keyResult(MaxByBuffer agg) {
+            return keyReader.toResult(agg.longKey);
+        }
+    }
+
+    /**
+     * 针对浮点类型(float/double)key的计算类，NaN大于其他所有值
+     */
+    public static class MaxByDoubleEvaluator extends AbstractMaxByEvaluator {
+        /**
+         * 复用max_udaf_gen中读取key及生成key的逻辑
+         */
+        private transient MaxGenericUDAF.MaxDoubleEvaluator keyReader;
+
+        public MaxByDoubleEvaluator(boolean max) {
+            super(max);
+        }
+
+        @Override
+        protected ObjectInspector initKey(PrimitiveObjectInspector keyOI) throws HiveException {
+            keyReader = new MaxGenericUDAF.MaxDoubleEvaluator();
+            return keyReader.init(Mode.COMPLETE, new ObjectInspector[]{keyOI});
+        }
+
+        @Override
+        protected boolean update(MaxByBuffer agg, Object key) throws HiveException {
+            double value = keyReader.getDouble(key);
+            int cmp = Double.compare(value, agg.doubleKey);
+            if (agg.empty || (max ? cmp > 0 : cmp < 0)) {
+                agg.doubleKey = value;
+                agg.empty = false;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected Object keyResult(MaxByBuffer agg) {
+            return keyReader.toResult(agg.doubleKey);
+        }
+    }
+
+    /**
+     * 针对字符串类型(string/varchar/char)key的计算类，按UTF-8字节比较
+     */
+    public static class MaxByStringEvaluator extends AbstractMaxByEvaluator {
+        /**
+         * 复用max_udaf_gen中读取key的逻辑
+         */
+        private transient MaxGenericUDAF.MaxStringEvaluator keyReader;
+        /**
+         * 复用的key对象
+         */
+        private transient Text keyResult;
+
+        public MaxByStringEvaluator(boolean max) {
+            super(max);
+        }
+
+        @Override
+        protected ObjectInspector initKey(PrimitiveObjectInspector keyOI) throws HiveException {
+            keyReader = new MaxGenericUDAF.MaxStringEvaluator();
+            keyResult = new Text();
+            return keyReader.init(Mode.COMPLETE, new ObjectInspector[]{keyOI});
+        }
+
+        @Override
+        protected boolean update(MaxByBuffer agg, Object key) throws HiveException {
+            Text value = keyReader.getText(key);
+            if (!agg.empty) {
+                int cmp = WritableComparator.compareBytes(value.getBytes(), 0, value.getLength(),
+                        agg.keyBytes, 0, agg.keyLength);
+                if (max ? cmp <= 0 : cmp >= 0) {
+                    return false;
+                }
+            }
+            // 复用原有的数组，只在长度不足时重新分配
+            if (null == agg.keyBytes || agg.keyBytes.length < value.getLength()) {
+                agg.keyBytes = new byte[Math.max(value.getLength(), 16)];
+            }
+            System.arraycopy(value.getBytes(), 0, agg.keyBytes, 0, value.getLength());
+            agg.keyLength = value.getLength();
+            agg.empty = false;
+            return true;
+        }
+
+        @Override
+        protected Object keyResult(MaxByBuffer agg) {
+            keyResult.set(agg.keyBytes, 0, agg.keyLength);
+            return keyResult;
+        }
+    }
+}
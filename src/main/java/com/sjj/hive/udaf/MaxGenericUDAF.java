@@ -0,0 +1,669 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec;
+import org.apache.hadoop.hive.ql.plan.ptf.BoundaryDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DateWritableV2;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.io.TimestampWritableV2;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.HiveDecimalObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.TimestampObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * max_udaf的GenericUDAF实现，根据入参类型选择对应的计算类，中间数据只包含基本类型的字段，输出对象在各行之间复用
+ * 与max_udaf相比增加了decimal、date及timestamp类型的支持，结果类型与入参类型一致(varchar及char返回string)
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "max_udaf_gen",
+        value = "_FUNC_(expr) - Returns the maximum value of expr",
+        extended = "Example:\n"
+                + "  > SELECT _FUNC_(age) FROM table GROUP BY class;"
+)
+public class MaxGenericUDAF extends AbstractGenericUDAFResolver {
+    /**
+     * 根据入参获取对应的Evaluator执行器
+     *
+     * @param info
+     * @return
+     * @throws SemanticException
+     */
+    @Override
+    public GenericUDAFEvaluator getEvaluator(TypeInfo[] info) throws SemanticException {
+        if (info.length != 1) {
+            throw new UDFArgumentTypeException(info.length - 1,
+                    "Exactly one argument is expected.");
+        }
+
+        if (info[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+            throw new UDFArgumentTypeException(0,
+                    "Only primitive type arguments are accepted but "
+                            + info[0].getTypeName() + " is passed.");
+        }
+        switch (((PrimitiveTypeInfo) info[0]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case DATE:
+                return new MaxLongEvaluator();
+            case FLOAT:
+            case DOUBLE:
+                return new MaxDoubleEvaluator();
+            case DECIMAL:
+                return new MaxDecimalEvaluator();
+            case TIMESTAMP:
+                return new MaxTimestampEvaluator();
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+                return new MaxStringEvaluator();
+            case BOOLEAN:
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only numeric, string, date or timestamp type arguments are accepted but "
+                                + info[0].getTypeName() + " is passed.");
+        }
+    }
+
+    /**
+     * 各类型计算类的公共部分
+     * 部分聚合结果与最终结果相同，即当前的最大值，因此merge与iterate的处理逻辑一致
+     */
+    public abstract static class AbstractMaxEvaluator extends GenericUDAFEvaluator {
+        /**
+         * 入参检查器，PARTIAL2及FINAL阶段为部分聚合结果的检查器，与出参类型相同
+         */
+        protected transient PrimitiveObjectInspector inputOI;
+        /**
+         * 出参检查器，窗口计算时由流式计算类用于复制出参
+         */
+        protected transient ObjectInspector outputOI;
+
+        /**
+         * 计算开始时调用，执行初始化相关操作
+         *
+         * @param m
+         * @param parameters
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+            assert (parameters.length == 1);
+            super.init(m, parameters);
+            inputOI = (PrimitiveObjectInspector) parameters[0];
+            outputOI = initInput(inputOI);
+            return outputOI;
+        }
+
+        /**
+         * 根据入参检查器准备读取入参所需的对象，并返回出参检查器
+         *
+         * @param inputOI
+         * @return
+         * @throws HiveException
+         */
+        protected abstract ObjectInspector initInput(PrimitiveObjectInspector inputOI) throws HiveException;
+
+        /**
+         * 用一个非空入参更新最大值
+         *
+         * @param agg
+         * @param parameter
+         * @throws HiveException
+         */
+        protected abstract void update(AggregationBuffer agg, Object parameter) throws HiveException;
+
+        /**
+         * 窗口函数使用ROWS窗口且窗口结束位置有界时，对整数、日期、浮点及字符串类型返回基于单调队列的流式计算类
+         * 其余情况返回null，由Hive对每行重新计算整个窗口
+         *
+         * @param wFrameDef
+         * @return
+         */
+        @Override
+        public GenericUDAFEvaluator getWindowingEvaluator(WindowFrameDef wFrameDef) {
+            BoundaryDef start = wFrameDef.getStart();
+            BoundaryDef end = wFrameDef.getEnd();
+            if (!(this instanceof MaxLongEvaluator || this instanceof MaxDoubleEvaluator
+                    || this instanceof MaxStringEvaluator)
+                    || wFrameDef.getWindowType() != WindowingSpec.WindowType.ROWS
+                    || start.isFollowing() || end.isPreceding() || end.isUnbounded()) {
+                return null;
+            }
+            int preceding = start.isUnbounded() ? MaxStreamingEvaluator.UNBOUNDED
+                    : start.isCurrentRow() ? 0 : start.getAmt();
+            int following = end.isCurrentRow() ? 0 : end.getAmt();
+            return new MaxStreamingEvaluator(this, preceding, following);
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            assert (parameters.length == 1);
+            if (null != parameters[0]) {
+                update(agg, parameters[0]);
+            }
+        }
+
+        /**
+         * 生成部分聚合结果
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+            return terminate(agg);
+        }
+
+        /**
+         * 对部分聚合结果进行合并
+         *
+         * @param agg
+         * @param partial
+         * @throws HiveException
+         */
+        @Override
+        public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+            if (null != partial) {
+                update(agg, partial);
+            }
+        }
+    }
+
+    /**
+     * 整数及日期类型的中间数据
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class LongMaxBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        long max;
+        boolean empty = true;
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) JavaDataModel.alignUp(model.object() + model.primitive2() + model.primitive1(),
+                    model.memoryAlign());
+        }
+    }
+
+    /**
+     * 针对整数类型(tinyint/smallint/int/bigint)及date类型的计算类，date按距1970-01-01的天数比较
+     */
+    public static class MaxLongEvaluator extends AbstractMaxEvaluator {
+        /**
+         * 按入参类型在初始化时选定的读取器及出参，计算时不再判断入参类型
+         */
+        private transient InputReaders.LongReader reader;
+        private transient LongResult result;
+
+        @Override
+        protected ObjectInspector initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            reader = InputReaders.longReader(inputOI);
+            switch (inputOI.getPrimitiveCategory()) {
+                case BYTE:
+                    result = new ByteResult();
+                    break;
+                case SHORT:
+                    result = new ShortResult();
+                    break;
+                case INT:
+                    result = new IntResult();
+                    break;
+                case LONG:
+                    result = new LongValueResult();
+                    break;
+                default:
+                    result = new DateResult();
+                    break;
+            }
+            return PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(inputOI.getPrimitiveCategory());
+        }
+
+        /**
+         * 读取一个非空入参的整数值
+         */
+        long getLong(Object parameter) {
+            return reader.get(parameter);
+        }
+
+        /**
+         * 将整数值写入复用的出参对象
+         */
+        Object toResult(long value) {
+            return result.set(value);
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new LongMaxBuffer();
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((LongMaxBuffer) agg).max = 0L;
+            ((LongMaxBuffer) agg).empty = true;
+        }
+
+        @Override
+        protected void update(AggregationBuffer agg, Object parameter) throws HiveException {
+            LongMaxBuffer myagg = (LongMaxBuffer) agg;
+            long value = getLong(parameter);
+            if (myagg.empty || value > myagg.max) {
+                myagg.max = value;
+                myagg.empty = false;
+            }
+        }
+
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            LongMaxBuffer myagg = (LongMaxBuffer) agg;
+            return myagg.empty ? null : toResult(myagg.max);
+        }
+    }
+
+    /**
+     * 整数及日期类型复用的出参对象，按入参类型选定实现
+     */
+    private abstract static class LongResult {
+        abstract Object set(long value);
+    }
+
+    private static final class ByteResult extends LongResult {
+        private final ByteWritable result = new ByteWritable();
+
+        @Override
+        Object set(long value) {
+            result.set((byte) value);
+            return result;
+        }
+    }
+
+    private static final class ShortResult extends LongResult {
+        private final ShortWritable result = new ShortWritable();
+
+        @Override
+        Object set(long value) {
+            result.set((short) value);
+            return result;
+        }
+    }
+
+    private static final class IntResult extends LongResult {
+        private final IntWritable result = new IntWritable();
+
+        @Override
+        Object set(long value) {
+            result.set((int) value);
+            return result;
+        }
+    }
+
+    private static final class LongValueResult extends LongResult {
+        private final LongWritable result = new LongWritable();
+
+        @Override
+        Object set(long value) {
+            result.set(value);
+            return result;
+        }
+    }
+
+    /**
+     * date按距1970-01-01的天数存储
+     */
+    private static final class DateResult extends LongResult {
+        private final DateWritableV2 result = new DateWritableV2();
+
+        @Override
+        Object set(long value) {
+            result.set((int) value);
+            return result;
+        }
+    }
+
+    /**
+     * 浮点类型的中间数据
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class DoubleMaxBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        double max;
+        boolean empty = true;
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) JavaDataModel.alignUp(model.object() + model.primitive2() + model.primitive1(),
+                    model.memoryAlign());
+        }
+    }
+
+    /**
+     * 针对浮点类型(float/double)的计算类，与Hive的排序规则一致，NaN大于其他所有值
+     */
+    public static class MaxDoubleEvaluator extends AbstractMaxEvaluator {
+        private transient InputReaders.DoubleReader reader;
+        /**
+         * 复用的出参对象
+         */
+        private transient FloatWritable floatResult;
+        private transient DoubleWritable doubleResult;
+
+        @Override
+        protected ObjectInspector initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            switch (inputOI.getPrimitiveCategory()) {
+                case FLOAT:
+                    reader = InputReaders.doubleReader(inputOI);
+                    floatResult = new FloatWritable();
+                    return PrimitiveObjectInspectorFactory.writableFloatObjectInspector;
+                case DOUBLE:
+                    reader = InputReaders.doubleReader(inputOI);
+                    doubleResult = new DoubleWritable();
+                    return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+                default:
+                    throw new UDFArgumentTypeException(0,
+                            "Only float or double type arguments are accepted but " + inputOI.getTypeName()
+                                    + " is passed.");
+            }
+        }
+
+        /**
+         * 读取一个非空入参的数值
+         */
+        double getDouble(Object parameter) {
+            return reader.get(parameter);
+        }
+
+        /**
+         * 将数值写入复用的出参对象
+         */
+        Object toResult(double value) {
+            if (null != doubleResult) {
+                doubleResult.set(value);
+                return doubleResult;
+            }
+            floatResult.set((float) value);
+            return floatResult;
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new DoubleMaxBuffer();
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((DoubleMaxBuffer) agg).max = 0.0;
+            ((DoubleMaxBuffer) agg).empty = true;
+        }
+
+        @Override
+        protected void update(AggregationBuffer agg, Object parameter) throws HiveException {
+            DoubleMaxBuffer myagg = (DoubleMaxBuffer) agg;
+            double value = getDouble(parameter);
+            if (myagg.empty || Double.compare(value, myagg.max) > 0) {
+                myagg.max = value;
+                myagg.empty = false;
+            }
+        }
+
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            DoubleMaxBuffer myagg = (DoubleMaxBuffer) agg;
+            return myagg.empty ? null : toResult(myagg.max);
+        }
+    }
+
+    /**
+     * decimal类型的中间数据，最大值复制到可变的HiveDecimalWritable中，更新时不创建新对象
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class DecimalMaxBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        final HiveDecimalWritable max = new HiveDecimalWritable();
+        boolean empty = true;
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) JavaDataModel.alignUp(model.object() + model.ref() + model.primitive1(),
+                    model.memoryAlign()) + model.lengthOfDecimal();
+        }
+    }
+
+    /**
+     * 针对decimal类型的计算类，结果的精度与入参一致
+     */
+    public static class MaxDecimalEvaluator extends AbstractMaxEvaluator {
+        private transient HiveDecimalObjectInspector decimalOI;
+        /**
+         * 复用的出参对象
+         */
+        private transient HiveDecimalWritable result;
+
+        @Override
+        protected ObjectInspector initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            decimalOI = (HiveDecimalObjectInspector) inputOI;
+            result = new HiveDecimalWritable();
+            return PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(decimalOI.getTypeInfo());
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new DecimalMaxBuffer();
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((DecimalMaxBuffer) agg).empty = true;
+        }
+
+        @Override
+        protected void update(AggregationBuffer agg, Object parameter) throws HiveException {
+            DecimalMaxBuffer myagg = (DecimalMaxBuffer) agg;
+            HiveDecimalWritable value = decimalOI.getPrimitiveWritableObject(parameter);
+            if (null == value || !value.isSet()) {
+                return;
+            }
+            if (myagg.empty || value.compareTo(myagg.max) > 0) {
+                myagg.max.set(value);
+                myagg.empty = false;
+            }
+        }
+
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            DecimalMaxBuffer myagg = (DecimalMaxBuffer) agg;
+            if (myagg.empty) {
+                return null;
+            }
+            result.set(myagg.max);
+            return result;
+        }
+    }
+
+    /**
+     * timestamp类型的中间数据，按秒及纳秒存储
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class TimestampMaxBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        long seconds;
+        int nanos;
+        boolean empty = true;
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) JavaDataModel.alignUp(model.object() + model.primitive2() + model.primitive1() * 2,
+                    model.memoryAlign());
+        }
+    }
+
+    /**
+     * 针对timestamp类型的计算类
+     */
+    public static class MaxTimestampEvaluator extends AbstractMaxEvaluator {
+        private transient TimestampObjectInspector timestampOI;
+        /**
+         * 复用的出参对象
+         */
+        private transient TimestampWritableV2 result;
+
+        @Override
+        protected ObjectInspector initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            timestampOI = (TimestampObjectInspector) inputOI;
+            result = new TimestampWritableV2();
+            return PrimitiveObjectInspectorFactory.writableTimestampObjectInspector;
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new TimestampMaxBuffer();
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((TimestampMaxBuffer) agg).empty = true;
+        }
+
+        @Override
+        protected void update(AggregationBuffer agg, Object parameter) throws HiveException {
+            TimestampMaxBuffer myagg = (TimestampMaxBuffer) agg;
+            TimestampWritableV2 value = timestampOI.getPrimitiveWritableObject(parameter);
+            long seconds = value.getSeconds();
+            int nanos = value.getNanos();
+            if (myagg.empty || seconds > myagg.seconds || (seconds == myagg.seconds && nanos > myagg.nanos)) {
+                myagg.seconds = seconds;
+                myagg.nanos = nanos;
+                myagg.empty = false;
+            }
+        }
+
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            TimestampMaxBuffer myagg = (TimestampMaxBuffer) agg;
+            if (myagg.empty) {
+                return null;
+            }
+            // setInternal的第一个参数为毫秒，亚秒部分由纳秒决定
+            result.setInternal(myagg.seconds * 1000L, myagg.nanos);
+            return result;
+        }
+    }
+
+    /**
+     * 字符串类型的中间数据，最大值复制到可扩容的字节数组中
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class StringMaxBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        byte[] bytes = new byte[16];
+        int length;
+        boolean empty = true;
+
+        void set(byte[] src, int srcLength) {
+            if (bytes.length < srcLength) {
+                bytes = new byte[Math.max(srcLength, bytes.length * 2)];
+            }
+            System.arraycopy(src, 0, bytes, 0, srcLength);
+            length = srcLength;
+            empty = false;
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) (JavaDataModel.alignUp(model.object() + model.ref() + model.primitive1() * 2,
+                    model.memoryAlign()) + model.lengthForByteArrayOfSize(bytes.length));
+        }
+    }
+
+    /**
+     * 针对字符串类型(string/varchar/char)的计算类，按UTF-8字节比较，与Text的排序规则一致
+     */
+    public static class MaxStringEvaluator extends AbstractMaxEvaluator {
+        /**
+         * varchar及char类型先转换为string
+         */
+        private transient InputReaders.TextReader reader;
+        /**
+         * 复用的出参对象
+         */
+        private transient Text result;
+
+        @Override
+        protected ObjectInspector initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            reader = new InputReaders.TextReader(inputOI);
+            result = new Text();
+            return PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+        }
+
+        /**
+         * 读取一个非空入参的字符串
+         */
+        Text getText(Object parameter) {
+            return reader.get(parameter);
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new StringMaxBuffer();
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((StringMaxBuffer) agg).length = 0;
+            ((StringMaxBuffer) agg).empty = true;
+        }
+
+        @Override
+        protected void update(AggregationBuffer agg, Object parameter) throws HiveException {
+            StringMaxBuffer myagg = (StringMaxBuffer) agg;
+            Text value = getText(parameter);
+            if (myagg.empty || WritableComparator.compareBytes(value.getBytes(), 0, value.getLength(),
+                    myagg.bytes, 0, myagg.length) > 0) {
+                myagg.set(value.getBytes(), value.getLength());
+            }
+        }
+
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            StringMaxBuffer myagg = (StringMaxBuffer) agg;
+            if (myagg.empty) {
+                return null;
+            }
+            result.set(myagg.bytes, 0, myagg.length);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.ISupportStreamingModeForWindowing;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * max_udaf_gen的流式窗口计算类，用于ROWS BETWEEN n PRECEDING(或UNBOUNDED PRECEDING、CURRENT ROW)
+ * AND m FOLLOWING(或CURRENT ROW)的窗口，支持整数、日期、浮点及字符串类型
+ * 使用单调递减的双端队列，队首即为当前窗口的最大值，新值从队尾加入前先移除所有不大于它的值，离开窗口的值从队首移除
+ * 每个值最多入队出队各一次，每行的均摊计算量为O(1)，队列存储在大小为n+m+1的基本类型环形数组中
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+class MaxStreamingEvaluator extends GenericUDAFEvaluator implements ISupportStreamingModeForWindowing {
+    /**
+     * 窗口起始位置为UNBOUNDED PRECEDING
+     */
+    static final int UNBOUNDED = -1;
+
+    /**
+     * 被包装的计算类，用于读取入参及生成出参
+     */
+    private final MaxGenericUDAF.AbstractMaxEvaluator wrappedEval;
+
+    /**
+     * 窗口起始位置在当前行之前的行数，为UNBOUNDED时队列中只需保留当前的最大值
+     */
+    private final int preceding;
+
+    /**
+     * 窗口结束位置在当前行之后的行数，即结果相对入参延迟输出的行数
+     */
+    private final int following;
+
+    /**
+     * 出参检查器，用于复制被包装的计算类复用的出参对象
+     * 窗口计算不会调用本类的init，因此取自已初始化的被包装计算类
+     */
+    private transient ObjectInspector outputOI;
+
+    MaxStreamingEvaluator(MaxGenericUDAF.AbstractMaxEvaluator wrappedEval, int preceding, int following) {
+        this.wrappedEval = wrappedEval;
+        this.outputOI = wrappedEval.outputOI;
+        this.preceding = preceding;
+        this.following = following;
+    }
+
+    /**
+     * 流式计算过程中的状态
+     */
+    @AggregationType(estimable = true)
+    private final class StreamingState extends AbstractAggregationBuffer {
+        /**
+         * 单调队列，按行号递增、值递减排列，根据入参类型只使用longValues、doubleValues及textValues中的一个
+         */
+        private final int[] rows;
+        private final long[] longValues;
+        private final double[] doubleValues;
+        private final byte[][] textValues;
+        private final int[] textLengths;
+        private int head;
+        private int size;
+
+        /**
+         * 已计算完成但尚未输出的结果
+         */
+        private final Object[] results;
+        private int resultHead;
+        private int resultSize;
+
+        /**
+         * 已处理的行数
+         */
+        private int numRows;
+
+        StreamingState() {
+            int capacity = preceding == UNBOUNDED ? 1 : preceding + following + 1;
+            rows = new int[capacity];
+            longValues = wrappedEval instanceof MaxGenericUDAF.MaxLongEvaluator ? new long[capacity] : null;
+            doubleValues = wrappedEval instanceof MaxGenericUDAF.MaxDoubleEvaluator ? new double[capacity] : null;
+            textValues = wrappedEval instanceof MaxGenericUDAF.MaxStringEvaluator ? new byte[capacity][] : null;
+            textLengths = null != textValues ? new int[capacity] : null;
+            results = new Object[following + 1];
+        }
+
+        void reset() {
+            head = 0;
+            size = 0;
+            resultHead = 0;
+            resultSize = 0;
+            numRows = 0;
+        }
+
+        private int slot(int index) {
+            return (head + index) % rows.length;
+        }
+
+        /**
+         * 移除行号小于firstRow的队首元素
+         */
+        void expire(int firstRow) {
+            while (size > 0 && rows[head] < firstRow) {
+                head = (head + 1) % rows.length;
+                size--;
+            }
+        }
+
+        /**
+         * 加入一行，非空值从队尾入队
+         */
+        void add(Object parameter) throws HiveException {
+            int row = numRows++;
+            if (preceding != UNBOUNDED) {
+                // 下一个输出结果的窗口起始行
+                expire(row - following - preceding);
+            }
+            if (null == parameter) {
+                return;
+            }
+            if (null != longValues) {
+                long value = ((MaxGenericUDAF.MaxLongEvaluator) wrappedEval).getLong(parameter);
+                while (size > 0 && longValues[slot(size - 1)] <= value) {
+                    size--;
+                }
+                if (push(row)) {
+                    longValues[slot(size - 1)] = value;
+                }
+            } else if (null != doubleValues) {
+                double value = ((MaxGenericUDAF.MaxDoubleEvaluator) wrappedEval).getDouble(parameter);
+                while (size > 0 && Double.compare(doubleValues[slot(size - 1)], value) <= 0) {
+                    size--;
+                }
+                if (push(row)) {
+                    doubleValues[slot(size - 1)] = value;
+                }
+            } else {
+                Text value = ((MaxGenericUDAF.MaxStringEvaluator) wrappedEval).getText(parameter);
+                byte[] bytes = value.getBytes();
+                int length = value.getLength();
+                while (size > 0 && WritableComparator.compareBytes(textValues[slot(size - 1)], 0,
+                        textLengths[slot(size - 1)], bytes, 0, length) <= 0) {
+                    size--;
+                }
+                if (push(row)) {
+                    int slot = slot(size - 1);
+                    // 复用该位置原有的数组，只在长度不足时重新分配
+                    if (null == textValues[slot] || textValues[slot].length < length) {
+                        textValues[slot] = new byte[Math.max(length, 16)];
+                    }
+                    System.arraycopy(bytes, 0, textValues[slot], 0, length);
+                    textLengths[slot] = length;
+                }
+            }
+        }
+
+        /**
+         * 在队尾占用一个位置，窗口起始位置为UNBOUNDED且队列中已有更大的值时不需要入队
+         */
+        private boolean push(int row) {
+            if (preceding == UNBOUNDED && size > 0) {
+                return false;
+            }
+            rows[slot(size)] = row;
+            size++;
+            return true;
+        }
+
+        /**
+         * 将队首的值作为当前窗口的最大值加入待输出的结果中
+         * 结果会被Hive缓存到整行输出为止，因此每个结果都是新的对象
+         */
+        void addResult() throws HiveException {
+            Object result;
+            if (size == 0) {
+                result = ISupportStreamingModeForWindowing.NULL_RESULT;
+            } else if (null != longValues) {
+                result = copy(((MaxGenericUDAF.MaxLongEvaluator) wrappedEval).toResult(longValues[head]));
+            } else if (null != doubleValues) {
+                result = copy(((MaxGenericUDAF.MaxDoubleEvaluator) wrappedEval).toResult(doubleValues[head]));
+            } else {
+                Text text = new Text();
+                text.set(textValues[head], 0, textLengths[head]);
+                result = text;
+            }
+            results[(resultHead + resultSize) % results.length] = result;
+            resultSize++;
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            int capacity = rows.length;
+            long estimate = model.object() * 2 + model.primitive1() * 5
+                    + model.lengthForIntArrayOfSize(capacity)
+                    + model.lengthForObjectArrayOfSize(results.length);
+            if (null != longValues) {
+                estimate += model.lengthForLongArrayOfSize(capacity);
+            } else if (null != doubleValues) {
+                estimate += model.lengthForDoubleArrayOfSize(capacity);
+            } else {
+                estimate += model.lengthForObjectArrayOfSize(capacity) + model.lengthForIntArrayOfSize(capacity);
+                for (byte[] bytes : textValues) {
+                    if (null != bytes) {
+                        estimate += model.lengthForByteArrayOfSize(bytes.length);
+                    }
+                }
+            }
+            return (int) estimate;
+        }
+    }
+
+    private Object copy(Object result) {
+        return ObjectInspectorUtils.copyToStandardObject(result, outputOI,
+                ObjectInspectorUtils.ObjectInspectorCopyOption.WRITABLE);
+    }
+
+    @Override
+    public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+        super.init(m, parameters);
+        outputOI = wrappedEval.init(m, parameters);
+        return outputOI;
+    }
+
+    @Override
+    public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+        return new StreamingState();
+    }
+
+    @Override
+    public void reset(AggregationBuffer agg) throws HiveException {
+        ((StreamingState) agg).reset();
+    }
+
+    /**
+     * 加入一行，窗口的结束位置到达该行时输出窗口起始行的结果
+     *
+     * @param agg
+     * @param parameters
+     * @throws HiveException
+     */
+    @Override
+    public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+        StreamingState state = (StreamingState) agg;
+        state.add(parameters[0]);
+        if (state.numRows > following) {
+            state.addResult();
+        }
+    }
+
+    /**
+     * 窗口计算直接使用getWindowingEvaluator返回的对象，不会调用init，父类的mode为null时aggregate会调用merge
+     * 流式计算只处理原始入参，因此直接调用iterate
+     *
+     * @param agg
+     * @param parameters
+     * @throws HiveException
+     */
+    @Override
+    public void aggregate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+        iterate(agg, parameters);
+    }
+
+    /**
+     * 分区结束时计算剩余行的结果，这些行的窗口结束位置超出了分区范围
+     *
+     * @param agg
+     * @return
+     * @throws HiveException
+     */
+    @Override
+    public Object terminate(AggregationBuffer agg) throws HiveException {
+        StreamingState state = (StreamingState) agg;
+        for (int row = Math.max(0, state.numRows - following); row < state.numRows; row++) {
+            if (preceding != UNBOUNDED) {
+                state.expire(row - preceding);
+            }
+            state.addResult();
+        }
+        return null;
+    }
+
+    @Override
+    public Object getNextResult(AggregationBuffer agg) throws HiveException {
+        StreamingState state = (StreamingState) agg;
+        if (state.resultSize == 0) {
+            return null;
+        }
+        Object result = state.results[state.resultHead];
+        state.results[state.resultHead] = null;
+        state.resultHead = (state.resultHead + 1) % state.results.length;
+        state.resultSize--;
+        return result;
+    }
+
+    @Override
+    public int getRowsRemainingAfterTerminate() throws HiveException {
+        return following;
+    }
+
+    @Override
+    public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+        throw new HiveException(getClass().getSimpleName() + ": terminatePartial not supported");
+    }
+
+    @Override
+    public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+        throw new HiveException(getClass().getSimpleName() + ": merge not supported");
+    }
+}
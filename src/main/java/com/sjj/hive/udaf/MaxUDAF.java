@@ -1,5 +1,6 @@
 package com.sjj.hive.udaf;
 
+import com.sjj.hive.processor.GenericAdapter;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDAF;
 import org.apache.hadoop.hive.ql.exec.UDAFEvaluator;
@@ -22,6 +23,7 @@ import org.apache.hadoop.io.Text;
         name = "max_udaf",
         value = "_FUNC_(expr) - Returns the maximum value of expr"
 )
+@GenericAdapter
 @SuppressWarnings("deprecation")
 public class MaxUDAF extends UDAF {
     static public class MaxShortEvaluator implements UDAFEvaluator {
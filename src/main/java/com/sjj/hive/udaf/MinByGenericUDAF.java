@@ -0,0 +1,23 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * 返回key最小的行对应的value，key相同时保留最先出现的行，计算逻辑与max_by一致
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "min_by",
+        value = "_FUNC_(value, key) - Returns the value of the row where key is minimal",
+        extended = "Example:\n"
+                + "  > SELECT class, _FUNC_(name, score) FROM table GROUP BY class;"
+)
+public class MinByGenericUDAF extends MaxByGenericUDAF {
+    @Override
+    protected boolean isMax() {
+        return false;
+    }
+}
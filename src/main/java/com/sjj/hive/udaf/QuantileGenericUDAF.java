@@ -0,0 +1,350 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于KLL草图的近似分位数，每组的内存只与k有关，可以代替保存全部数据的percentile在map端完成聚合
+ * 返回值的秩误差与k成反比，k=200(默认值)时约为1.3%，即p99的结果位于真实的p97.7与p100之间(99%置信度)
+ * 部分聚合结果为要计算的分位数及序列化后的草图，一次调用可以计算多个分位数
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "approx_quantiles",
+        value = "_FUNC_(x, p[, k]) - Returns the approximate p-th quantile of x using a KLL sketch, "
+                + "p can be a double between 0 and 1 or an array of them, k (between 8 and 65535, default 200) "
+                + "controls the memory and the normalized rank error, which is about 1.3% when k is 200",
+        extended = "Example:\n"
+                + "  > SELECT endpoint, _FUNC_(latency, array(0.5, 0.95, 0.99)) FROM table GROUP BY endpoint;"
+)
+public class QuantileGenericUDAF extends AbstractGenericUDAFResolver {
+    /**
+     * 根据入参获取对应的Evaluator执行器
+     *
+     * @param info
+     * @return
+     * @throws SemanticException
+     */
+    @Override
+    public GenericUDAFEvaluator getEvaluator(TypeInfo[] info) throws SemanticException {
+        if (info.length != 2 && info.length != 3) {
+            throw new UDFArgumentTypeException(info.length - 1,
+                    "Two or three arguments are expected.");
+        }
+
+        if (info[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+            throw new UDFArgumentTypeException(0,
+                    "Only primitive type arguments are accepted but "
+                            + info[0].getTypeName() + " is passed.");
+        }
+        switch (((PrimitiveTypeInfo) info[0]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+            case TIMESTAMP:
+                break;
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only numeric or string type arguments are accepted but "
+                                + info[0].getTypeName() + " is passed.");
+        }
+
+        TypeInfo fractionInfo = info[1].getCategory() == ObjectInspector.Category.LIST
+                ? ((ListTypeInfo) info[1]).getListElementTypeInfo() : info[1];
+        if (fractionInfo.getCategory() != ObjectInspector.Category.PRIMITIVE
+                || !isNumeric(((PrimitiveTypeInfo) fractionInfo).getPrimitiveCategory())) {
+            throw new UDFArgumentTypeException(1,
+                    "The quantile must be a number or an array of numbers but "
+                            + info[1].getTypeName() + " is passed.");
+        }
+        if (info.length == 3 && (info[2].getCategory() != ObjectInspector.Category.PRIMITIVE
+                || !isNumeric(((PrimitiveTypeInfo) info[2]).getPrimitiveCategory()))) {
+            throw new UDFArgumentTypeException(2,
+                    "The k must be an integer constant but " + info[2].getTypeName() + " is passed.");
+        }
+        return new QuantileEvaluator(info[1].getCategory() == ObjectInspector.Category.LIST);
+    }
+
+    private static boolean isNumeric(PrimitiveObjectInspector.PrimitiveCategory category) {
+        switch (category) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case DECIMAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 中间数据
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class QuantileBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        final KllSketch sketch = new KllSketch();
+
+        @Override
+        public int estimate() {
+            return sketch.estimateMemory();
+        }
+    }
+
+    /**
+     * 计算类，部分聚合结果为[分位数个数][各分位数][KLL草图]
+     * PARTIAL2及FINAL阶段Hive只传入部分聚合结果，因此常量参数中的分位数需要通过部分聚合结果传递
+     */
+    public static class QuantileEvaluator extends GenericUDAFEvaluator {
+        /**
+         * 分位数参数是否为数组，为数组时返回array<double>
+         */
+        private final boolean multiple;
+        /**
+         * 按入参类型选定的读取器，与avg_udaf_gen按相同的方式读取数值
+         */
+        private transient InputReaders.DoubleReader inputReader;
+        /**
+         * PARTIAL2及FINAL阶段的入参检查器
+         */
+        private transient BinaryObjectInspector partialOI;
+        /**
+         * 新建中间数据时使用的k，PARTIAL2及FINAL阶段为0，即使用合并的第一个草图的k
+         */
+        private transient int k;
+        /**
+         * 要计算的分位数，PARTIAL1及COMPLETE阶段来自常量参数，PARTIAL2及FINAL阶段来自部分聚合结果
+         */
+        private transient double[] fractions;
+        private transient double[] quantiles;
+        /**
+         * 复用的出参对象
+         */
+        private transient BytesWritable partialResult;
+        private transient DoubleWritable singleResult;
+        private transient List<DoubleWritable> result;
+
+        public QuantileEvaluator(boolean multiple) {
+            this.multiple = multiple;
+        }
+
+        /**
+         * 计算开始时调用，执行初始化相关操作
+         *
+         * @param m
+         * @param parameters
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+            super.init(m, parameters);
+
+            // 初始化入参
+            k = 0;
+            fractions = null;
+            if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+                // 当前阶段为PARTIAL1或COMPLETE，则入参数据为Hive函数的入参
+                PrimitiveObjectInspector inputOI = (PrimitiveObjectInspector) parameters[0];
+                inputReader = InputReaders.doubleReader(inputOI);
+                k = KllSketch.DEFAULT_K;
+                if (parameters.length == 3) {
+                    k = getConstantInt(parameters[2]);
+                    if (k < KllSketch.MIN_K || k > KllSketch.MAX_K) {
+                        throw new UDFArgumentTypeException(2, "The k must be between "
+                                + KllSketch.MIN_K + " and " + KllSketch.MAX_K + ".");
+                    }
+                }
+                initFractions(parameters[1]);
+            } else {
+                // 当前阶段为PARTIAL2或FINAL，则入参数据为中间结果
+                partialOI = (BinaryObjectInspector) parameters[0];
+            }
+
+            // 初始化出参
+            if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+                partialResult = new BytesWritable();
+                return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+            } else if (multiple) {
+                result = new ArrayList<DoubleWritable>();
+                return ObjectInspectorFactory.getStandardListObjectInspector(
+                        PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+            } else {
+                singleResult = new DoubleWritable();
+                return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+            }
+        }
+
+        private static int getConstantInt(ObjectInspector oi) throws HiveException {
+            if (!(oi instanceof ConstantObjectInspector)) {
+                throw new UDFArgumentTypeException(2, "The k must be a constant.");
+            }
+            Object value = ((ConstantObjectInspector) oi).getWritableConstantValue();
+            return null == value ? 0 : PrimitiveObjectInspectorUtils.getInt(value, (PrimitiveObjectInspector) oi);
+        }
+
+        /**
+         * 读取常量的分位数参数，每个分位数都必须在0到1之间，分位数数组不能为空
+         */
+        private void initFractions(ObjectInspector oi) throws HiveException {
+            if (!(oi instanceof ConstantObjectInspector)) {
+                throw new UDFArgumentTypeException(1, "The quantile must be a constant.");
+            }
+            Object value = ((ConstantObjectInspector) oi).getWritableConstantValue();
+            if (multiple) {
+                PrimitiveObjectInspector elementOI = (PrimitiveObjectInspector)
+                        ((ListObjectInspector) oi).getListElementObjectInspector();
+                List<?> values = null == value ? new ArrayList<Object>() : (List<?>) value;
+                if (values.isEmpty()) {
+                    throw new UDFArgumentTypeException(1, "The quantile array must not be empty.");
+                }
+                fractions = new double[values.size()];
+                for (int i = 0; i < fractions.length; i++) {
+                    fractions[i] = toFraction(values.get(i), elementOI);
+                }
+            } else {
+                fractions = new double[]{toFraction(value, (PrimitiveObjectInspector) oi)};
+            }
+            quantiles = new double[fractions.length];
+        }
+
+        private static double toFraction(Object value, PrimitiveObjectInspector oi) throws HiveException {
+            double fraction = null == value ? Double.NaN : PrimitiveObjectInspectorUtils.getDouble(value, oi);
+            if (!(fraction >= 0.0 && fraction <= 1.0)) {
+                throw new UDFArgumentTypeException(1, "The quantile must be between 0 and 1, got " + value);
+            }
+            return fraction;
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            QuantileBuffer buffer = new QuantileBuffer();
+            reset(buffer);
+            return buffer;
+        }
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((QuantileBuffer) agg).sketch.reset(k);
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            if (null != parameters[0]) {
+                ((QuantileBuffer) agg).sketch.update(inputReader.get(parameters[0]));
+            }
+        }
+
+        /**
+         * 生成部分聚合结果
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+            int count = null == fractions ? 0 : fractions.length;
+            int offset = 4 + count * 8;
+            ((QuantileBuffer) agg).sketch.serialize(partialResult, offset);
+            byte[] bytes = partialResult.getBytes();
+            BinaryCodec.writeInt(bytes, 0, count);
+            for (int i = 0; i < count; i++) {
+                BinaryCodec.writeLong(bytes, 4 + i * 8, Double.doubleToLongBits(fractions[i]));
+            }
+            return partialResult;
+        }
+
+        /**
+         * 对部分聚合结果进行合并
+         *
+         * @param agg
+         * @param partial
+         * @throws HiveException
+         */
+        @Override
+        public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+            if (null == partial) {
+                return;
+            }
+            BytesWritable writable = partialOI.getPrimitiveWritableObject(partial);
+            byte[] bytes = writable.getBytes();
+            int count = writable.getLength() < 4 ? -1 : BinaryCodec.readInt(bytes, 0);
+            // 按long比较，避免损坏的分位数个数溢出后通过长度校验
+            if (count < 0 || 4L + count * 8L > writable.getLength()) {
+                throw new HiveException("Invalid partial result of approx_quantiles, got "
+                        + writable.getLength() + " bytes");
+            }
+            int offset = 4 + count * 8;
+            if (null == fractions && count > 0) {
+                fractions = new double[count];
+                for (int i = 0; i < count; i++) {
+                    fractions[i] = Double.longBitsToDouble(BinaryCodec.readLong(bytes, 4 + i * 8));
+                }
+                quantiles = new double[count];
+            }
+            ((QuantileBuffer) agg).sketch.merge(bytes, offset, writable.getLength() - offset);
+        }
+
+        /**
+         * 计算最终结果，没有非空输入时返回NULL
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            KllSketch sketch = ((QuantileBuffer) agg).sketch;
+            if (sketch.getN() == 0L) {
+                return null;
+            }
+            sketch.getQuantiles(fractions, quantiles);
+            if (!multiple) {
+                singleResult.set(quantiles[0]);
+                return singleResult;
+            }
+            for (int i = result.size(); i < quantiles.length; i++) {
+                result.add(new DoubleWritable());
+            }
+            for (int i = 0; i < quantiles.length; i++) {
+                result.get(i).set(quantiles[i]);
+            }
+            return result;
+        }
+    }
+}
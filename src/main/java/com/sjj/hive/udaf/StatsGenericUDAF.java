@@ -0,0 +1,351 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+
+import java.util.ArrayList;
+
+/**
+ * 一次计算出count、sum、min、max、mean及variance，所有统计量存储在同一个中间数据中，只产生一个部分聚合结果
+ * 方差使用Welford算法计算，部分聚合结果合并时不会损失精度
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "stats_udaf_gen",
+        value = "_FUNC_(x) - Returns a struct of count, sum, min, max, mean and population variance "
+                + "of a set of numbers",
+        extended = "Example:\n"
+                + "  > SELECT s.count, s.mean, sqrt(s.variance) FROM ("
+                + "SELECT _FUNC_(age) AS s FROM table GROUP BY class) t;"
+)
+public class StatsGenericUDAF extends AbstractGenericUDAFResolver {
+    /**
+     * 根据入参获取对应的Evaluator执行器
+     *
+     * @param info
+     * @return
+     * @throws SemanticException
+     */
+    @Override
+    public GenericUDAFEvaluator getEvaluator(TypeInfo[] info) throws SemanticException {
+        if (info.length != 1) {
+            throw new UDFArgumentTypeException(info.length - 1,
+                    "Exactly one argument is expected.");
+        }
+
+        if (info[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+            throw new UDFArgumentTypeException(0,
+                    "Only primitive type arguments are accepted but "
+                            + info[0].getTypeName() + " is passed.");
+        }
+        switch (((PrimitiveTypeInfo) info[0]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+            case TIMESTAMP:
+                return new StatsGenericUDAFEvaluator();
+            case DECIMAL:
+            case BOOLEAN:
+            case DATE:
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only numeric or string type arguments are accepted but "
+                                + info[0].getTypeName() + " is passed.");
+        }
+    }
+
+    /**
+     * 部分聚合结果的字节数，依次为count、sum、min、max、mean及m2，每个8字节
+     */
+    static final int PARTIAL_LENGTH = 48;
+
+    /**
+     * 存储聚合过程中的中间数据，只包含基本类型的字段
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    private static class StatsAggregationBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        long count;
+        double sum;
+        double min;
+        double max;
+        double mean;
+        /**
+         * 与平均值之差的平方和，方差为m2 / count
+         */
+        double m2;
+
+        void reset() {
+            count = 0L;
+            sum = 0.0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            mean = 0.0;
+            m2 = 0.0;
+        }
+
+        /**
+         * 加入一个值
+         */
+        void add(double value) {
+            count++;
+            sum += value;
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        /**
+         * 合并另一组数据的统计量
+         */
+        void merge(long otherCount, double otherSum, double otherMin, double otherMax, double otherMean,
+                   double otherM2) {
+            if (otherCount == 0L) {
+                return;
+            }
+            if (count == 0L) {
+                count = otherCount;
+                sum = otherSum;
+                min = otherMin;
+                max = otherMax;
+                mean = otherMean;
+                m2 = otherM2;
+                return;
+            }
+            long total = count + otherCount;
+            double delta = otherMean - mean;
+            mean += delta * otherCount / total;
+            m2 += otherM2 + delta * delta * count * otherCount / total;
+            count = total;
+            sum += otherSum;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) JavaDataModel.alignUp(model.object() + model.primitive2() * 6, model.memoryAlign());
+        }
+    }
+
+    /**
+     * 计算类，部分聚合结果为48字节的二进制数据
+     */
+    public static class StatsGenericUDAFEvaluator extends GenericUDAFEvaluator {
+        /**
+         * PARTIAL1及COMPLETE阶段的入参检查器
+         */
+        private transient PrimitiveObjectInspector inputOI;
+        /**
+         * 按入参类型选定的读取器，避免每行通过通用的类型转换读取
+         */
+        private transient InputReaders.DoubleReader inputReader;
+        /**
+         * PARTIAL2及FINAL阶段的入参检查器
+         */
+        private transient BinaryObjectInspector partialOI;
+        /**
+         * PARTIAL1及PARTIAL2阶段的中间结果
+         */
+        private transient BytesWritable partialResult;
+        /**
+         * COMPLETE及FINAL阶段的结果，依次为count、sum、min、max、mean及variance
+         */
+        private transient Object[] result;
+        private transient LongWritable countResult;
+        private transient DoubleWritable[] doubleResults;
+
+        /**
+         * 计算开始时调用，执行初始化相关操作
+         *
+         * @param m
+         * @param parameters
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+            assert (parameters.length == 1);
+            super.init(m, parameters);
+
+            // 初始化入参
+            if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+                // 当前阶段为PARTIAL1或COMPLETE，则入参数据为Hive函数的入参
+                inputOI = (PrimitiveObjectInspector) parameters[0];
+                inputReader = InputReaders.doubleReader(inputOI);
+            } else {
+                // 当前阶段为PARTIAL2或FINAL，则入参数据为中间结果
+                partialOI = (BinaryObjectInspector) parameters[0];
+            }
+
+            // 初始化出参
+            if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+                // 当前阶段为PARTIAL1或PARTIAL2，则出参数据为定长的二进制中间结果
+                partialResult = new BytesWritable(new byte[PARTIAL_LENGTH]);
+                return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+            } else {
+                // 当前阶段为COMPLETE或FINAL，则出参数据为Hive函数的出参
+                ArrayList<String> fname = new ArrayList<String>();
+                fname.add("count");
+                fname.add("sum");
+                fname.add("min");
+                fname.add("max");
+                fname.add("mean");
+                fname.add("variance");
+                ArrayList<ObjectInspector> foi = new ArrayList<ObjectInspector>();
+                foi.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+                countResult = new LongWritable();
+                doubleResults = new DoubleWritable[fname.size() - 1];
+                for (int i = 0; i < doubleResults.length; i++) {
+                    foi.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+                    doubleResults[i] = new DoubleWritable();
+                }
+                result = new Object[fname.size()];
+                return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+            }
+        }
+
+        /**
+         * 获取新的中间数据存储实例
+         *
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            StatsAggregationBuffer buffer = new StatsAggregationBuffer();
+            buffer.reset();
+            return buffer;
+        }
+
+        /**
+         * 对存储的中间数据进行重置
+         *
+         * @param agg
+         * @throws HiveException
+         */
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((StatsAggregationBuffer) agg).reset();
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            assert (parameters.length == 1);
+            Object parameter = parameters[0];
+            if (null != parameter) {
+                ((StatsAggregationBuffer) agg).add(inputReader.get(parameter));
+            }
+        }
+
+        /**
+         * 生成部分聚合结果
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+            StatsAggregationBuffer myagg = (StatsAggregationBuffer) agg;
+            byte[] bytes = partialResult.getBytes();
+            BinaryCodec.writeLong(bytes, 0, myagg.count);
+            BinaryCodec.writeLong(bytes, 8, Double.doubleToLongBits(myagg.sum));
+            BinaryCodec.writeLong(bytes, 16, Double.doubleToLongBits(myagg.min));
+            BinaryCodec.writeLong(bytes, 24, Double.doubleToLongBits(myagg.max));
+            BinaryCodec.writeLong(bytes, 32, Double.doubleToLongBits(myagg.mean));
+            BinaryCodec.writeLong(bytes, 40, Double.doubleToLongBits(myagg.m2));
+            return partialResult;
+        }
+
+        /**
+         * 对部分聚合结果进行合并
+         *
+         * @param agg
+         * @param partial
+         * @throws HiveException
+         */
+        @Override
+        public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+            if (null != partial) {
+                BytesWritable writable = partialOI.getPrimitiveWritableObject(partial);
+                if (writable.getLength() != PARTIAL_LENGTH) {
+                    throw new HiveException("Invalid partial result of stats_udaf_gen, expected "
+                            + PARTIAL_LENGTH + " bytes but got " + writable.getLength());
+                }
+                byte[] bytes = writable.getBytes();
+                ((StatsAggregationBuffer) agg).merge(
+                        BinaryCodec.readLong(bytes, 0),
+                        Double.longBitsToDouble(BinaryCodec.readLong(bytes, 8)),
+                        Double.longBitsToDouble(BinaryCodec.readLong(bytes, 16)),
+                        Double.longBitsToDouble(BinaryCodec.readLong(bytes, 24)),
+                        Double.longBitsToDouble(BinaryCodec.readLong(bytes, 32)),
+                        Double.longBitsToDouble(BinaryCodec.readLong(bytes, 40)));
+            }
+        }
+
+        /**
+         * 计算最终结果，没有非空输入时count为0，其余统计量为NULL
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            StatsAggregationBuffer myagg = (StatsAggregationBuffer) agg;
+            countResult.set(myagg.count);
+            result[0] = countResult;
+            if (myagg.count == 0L) {
+                for (int i = 1; i < result.length; i++) {
+                    result[i] = null;
+                }
+                return result;
+            }
+            doubleResults[0].set(myagg.sum);
+            doubleResults[1].set(myagg.min);
+            doubleResults[2].set(myagg.max);
+            doubleResults[3].set(myagg.mean);
+            doubleResults[4].set(myagg.m2 / myagg.count);
+            for (int i = 1; i < result.length; i++) {
+                result[i] = doubleResults[i - 1];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,695 @@
+package com.sjj.hive.udaf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 返回每组中最大的k个值，按从大到小排列
+ * 每组只维护一个大小为k的最小堆，堆顶为当前第k大的值，新值大于堆顶时替换堆顶，不需要对整组数据排序
+ * 整数及浮点类型的堆为基本类型数组，字符串类型的堆为复用的Text数组，部分聚合结果为堆的二进制序列化结果
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "top_k",
+        value = "_FUNC_(x, k) - Returns an array of the k largest values of x in descending order, "
+                + "integer types return array<bigint>, float types return array<double>, "
+                + "string types return array<string>, k must be between 1 and 1000",
+        extended = "Example:\n"
+                + "  > SELECT class, _FUNC_(score, 10) FROM table GROUP BY class;"
+)
+public class TopKGenericUDAF extends AbstractGenericUDAFResolver {
+    /**
+     * k的取值范围，每组的堆按k分配数组，限制上限以免过大的常量导致内存溢出
+     */
+    static final int MIN_K = 1;
+    static final int MAX_K = 1000;
+
+    /**
+     * 根据入参获取对应的Evaluator执行器
+     *
+     * @param info
+     * @return
+     * @throws SemanticException
+     */
+    @Override
+    public GenericUDAFEvaluator getEvaluator(TypeInfo[] info) throws SemanticException {
+        if (info.length != 2) {
+            throw new UDFArgumentTypeException(info.length - 1,
+                    "Exactly two arguments are expected.");
+        }
+        for (int i = 0; i < info.length; i++) {
+            if (info[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+                throw new UDFArgumentTypeException(i,
+                        "Only primitive type arguments are accepted but "
+                                + info[i].getTypeName() + " is passed.");
+            }
+        }
+        switch (((PrimitiveTypeInfo) info[1]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                break;
+            default:
+                throw new UDFArgumentTypeException(1,
+                        "The k of top_k must be an integer constant but " + info[1].getTypeName() + " is passed.");
+        }
+        switch (((PrimitiveTypeInfo) info[0]).getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return new TopKLongEvaluator();
+            case FLOAT:
+            case DOUBLE:
+                return new TopKDoubleEvaluator();
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+                return new TopKStringEvaluator();
+            default:
+                throw new UDFArgumentTypeException(0,
+                        "Only numeric or string type arguments are accepted but "
+                                + info[0].getTypeName() + " is passed.");
+        }
+    }
+
+    /**
+     * 各类型堆的公共部分，k在PARTIAL1及COMPLETE阶段来自常量入参，在PARTIAL2及FINAL阶段来自部分聚合结果
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    abstract static class TopKBuffer extends GenericUDAFEvaluator.AbstractAggregationBuffer {
+        int k;
+        int size;
+
+        /**
+         * 确定k并分配堆所需的数组
+         */
+        abstract void init(int k);
+
+        /**
+         * 按升序排列堆中的元素，升序数组同时也满足最小堆的性质，因此排序后可以继续加入新值
+         */
+        abstract void sort();
+    }
+
+    /**
+     * 各类型计算类的公共部分
+     */
+    public abstract static class AbstractTopKEvaluator extends GenericUDAFEvaluator {
+        /**
+         * PARTIAL1及COMPLETE阶段的入参检查器
+         */
+        protected transient PrimitiveObjectInspector inputOI;
+        /**
+         * PARTIAL2及FINAL阶段的入参检查器
+         */
+        private transient BinaryObjectInspector partialOI;
+        /**
+         * PARTIAL1及COMPLETE阶段的k
+         */
+        private transient int k;
+        /**
+         * PARTIAL1及PARTIAL2阶段的中间结果
+         */
+        protected transient BytesWritable partialResult;
+        /**
+         * COMPLETE及FINAL阶段的结果
+         */
+        protected transient ArrayList<Object> result;
+
+        /**
+         * 计算开始时调用，执行初始化相关操作
+         *
+         * @param m
+         * @param parameters
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+            super.init(m, parameters);
+
+            // 初始化入参
+            if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+                // 当前阶段为PARTIAL1或COMPLETE，则入参数据为Hive函数的入参
+                assert (parameters.length == 2);
+                inputOI = (PrimitiveObjectInspector) parameters[0];
+                if (!(parameters[1] instanceof ConstantObjectInspector)) {
+                    throw new UDFArgumentTypeException(1, "The k of top_k must be a constant.");
+                }
+                Object value = ((ConstantObjectInspector) parameters[1]).getWritableConstantValue();
+                long constantK = null == value ? 0L : PrimitiveObjectInspectorUtils.getLong(value,
+                        (PrimitiveObjectInspector) parameters[1]);
+                if (constantK < MIN_K || constantK > MAX_K) {
+                    throw new UDFArgumentTypeException(1, "The k of top_k must be between "
+                            + MIN_K + " and " + MAX_K + ".");
+                }
+                k = (int) constantK;
+                initInput(inputOI);
+            } else {
+                // 当前阶段为PARTIAL2或FINAL，则入参数据为中间结果
+                partialOI = (BinaryObjectInspector) parameters[0];
+            }
+
+            // 初始化出参
+            if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+                partialResult = new BytesWritable();
+                return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+            } else {
+                result = new ArrayList<Object>();
+                return ObjectInspectorFactory.getStandardListObjectInspector(getElementOI());
+            }
+        }
+
+        /**
+         * 在PARTIAL1及COMPLETE阶段根据入参检查器准备读取入参所需的对象
+         *
+         * @param inputOI
+         * @throws HiveException
+         */
+        protected abstract void initInput(PrimitiveObjectInspector inputOI) throws HiveException;
+
+        /**
+         * 结果数组的元素检查器
+         */
+        protected abstract ObjectInspector getElementOI();
+
+        /**
+         * 将一个非空入参加入堆中
+         */
+        protected abstract void offer(TopKBuffer agg, Object parameter) throws HiveException;
+
+        /**
+         * 将部分聚合结果中的元素加入堆中，元素从offset开始
+         */
+        protected abstract void merge(TopKBuffer agg, byte[] bytes, int offset, int count) throws HiveException;
+
+        /**
+         * 将堆中的元素序列化到partialResult中，元素从offset开始
+         */
+        protected abstract void writePartial(TopKBuffer agg, int offset);
+
+        /**
+         * 将排序后的堆中的元素按从大到小的顺序加入result
+         */
+        protected abstract void fillResult(TopKBuffer agg);
+
+        @Override
+        public void reset(AggregationBuffer agg) throws HiveException {
+            ((TopKBuffer) agg).size = 0;
+        }
+
+        /**
+         * 对Hive入参数据进行计算
+         *
+         * @param agg
+         * @param parameters
+         * @throws HiveException
+         */
+        @Override
+        public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+            assert (parameters.length == 2);
+            if (null != parameters[0]) {
+                TopKBuffer myagg = (TopKBuffer) agg;
+                if (myagg.k == 0) {
+                    myagg.init(k);
+                }
+                offer(myagg, parameters[0]);
+            }
+        }
+
+        /**
+         * 生成部分聚合结果，格式为k、元素个数及各元素
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+            TopKBuffer myagg = (TopKBuffer) agg;
+            writePartial(myagg, 8);
+            byte[] bytes = partialResult.getBytes();
+            BinaryCodec.writeInt(bytes, 0, myagg.k);
+            BinaryCodec.writeInt(bytes, 4, myagg.size);
+            return partialResult;
+        }
+
+        /**
+         * 对部分聚合结果进行合并
+         *
+         * @param agg
+         * @param partial
+         * @throws HiveException
+         */
+        @Override
+        public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+            if (null == partial) {
+                return;
+            }
+            BytesWritable writable = partialOI.getPrimitiveWritableObject(partial);
+            if (writable.getLength() < 8) {
+                throw new HiveException("Invalid partial result of top_k, got " + writable.getLength() + " bytes");
+            }
+            byte[] bytes = writable.getBytes();
+            int partialK = BinaryCodec.readInt(bytes, 0);
+            int count = BinaryCodec.readInt(bytes, 4);
+            // 空的中间数据尚未确定k，此时k为0
+            if (count < 0 || (count > 0 && (partialK < MIN_K || partialK > MAX_K || count > partialK))) {
+                throw new HiveException("Invalid partial result of top_k, k is " + partialK + " and count is " + count);
+            }
+            if (count == 0) {
+                return;
+            }
+            TopKBuffer myagg = (TopKBuffer) agg;
+            if (myagg.k == 0) {
+                myagg.init(partialK);
+            }
+            merge(myagg, bytes, 8, count);
+        }
+
+        /**
+         * 计算最终结果，没有非空输入时返回NULL
+         *
+         * @param agg
+         * @return
+         * @throws HiveException
+         */
+        @Override
+        public Object terminate(AggregationBuffer agg) throws HiveException {
+            TopKBuffer myagg = (TopKBuffer) agg;
+            if (myagg.size == 0) {
+                return null;
+            }
+            myagg.sort();
+            result.clear();
+            fillResult(myagg);
+            return result;
+        }
+    }
+
+    /**
+     * 整数类型的堆
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class LongTopKBuffer extends TopKBuffer {
+        long[] heap;
+
+        @Override
+        void init(int k) {
+            this.k = k;
+            heap = new long[k];
+        }
+
+        void offer(long value) {
+            if (size < k) {
+                // 堆未满时从堆底上浮
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (heap[parent] <= value) {
+                        break;
+                    }
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = value;
+            } else if (value > heap[0]) {
+                // 堆已满时替换堆顶并下沉
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && heap[child + 1] < heap[child]) {
+                        child++;
+                    }
+                    if (value <= heap[child]) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = value;
+            }
+        }
+
+        @Override
+        void sort() {
+            Arrays.sort(heap, 0, size);
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) (model.object() + model.ref() + model.primitive1() * 2
+                    + model.lengthForLongArrayOfSize(k));
+        }
+    }
+
+    /**
+     * 针对整数类型(tinyint/smallint/int/bigint)的计算类
+     */
+    public static class TopKLongEvaluator extends AbstractTopKEvaluator {
+        private transient InputReaders.LongReader reader;
+        /**
+         * 复用的出参对象
+         */
+        private transient LongWritable[] resultValues = new LongWritable[0];
+
+        @Override
+        protected void initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            reader = InputReaders.longReader(inputOI);
+        }
+
+        @Override
+        protected ObjectInspector getElementOI() {
+            return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new LongTopKBuffer();
+        }
+
+        @Override
+        protected void offer(TopKBuffer agg, Object parameter) {
+            ((LongTopKBuffer) agg).offer(reader.get(parameter));
+        }
+
+        @Override
+        protected void merge(TopKBuffer agg, byte[] bytes, int offset, int count) {
+            for (int i = 0; i < count; i++) {
+                ((LongTopKBuffer) agg).offer(BinaryCodec.readLong(bytes, offset + i * 8));
+            }
+        }
+
+        @Override
+        protected void writePartial(TopKBuffer agg, int offset) {
+            long[] heap = ((LongTopKBuffer) agg).heap;
+            partialResult.setSize(offset + agg.size * 8);
+            byte[] bytes = partialResult.getBytes();
+            for (int i = 0; i < agg.size; i++) {
+                BinaryCodec.writeLong(bytes, offset + i * 8, heap[i]);
+            }
+        }
+
+        @Override
+        protected void fillResult(TopKBuffer agg) {
+            long[] heap = ((LongTopKBuffer) agg).heap;
+            if (resultValues.length < agg.size) {
+                resultValues = Arrays.copyOf(resultValues, agg.size);
+            }
+            for (int i = 0; i < agg.size; i++) {
+                if (null == resultValues[i]) {
+                    resultValues[i] = new LongWritable();
+                }
+                resultValues[i].set(heap[agg.size - 1 - i]);
+                result.add(resultValues[i]);
+            }
+        }
+    }
+
+    /**
+     * 浮点类型的堆，与Hive的排序规则一致，NaN大于其他所有值
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class DoubleTopKBuffer extends TopKBuffer {
+        double[] heap;
+
+        @Override
+        void init(int k) {
+            this.k = k;
+            heap = new double[k];
+        }
+
+        void offer(double value) {
+            if (size < k) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (Double.compare(heap[parent], value) <= 0) {
+                        break;
+                    }
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = value;
+            } else if (Double.compare(value, heap[0]) > 0) {
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && Double.compare(heap[child + 1], heap[child]) < 0) {
+                        child++;
+                    }
+                    if (Double.compare(value, heap[child]) <= 0) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = value;
+            }
+        }
+
+        @Override
+        void sort() {
+            Arrays.sort(heap, 0, size);
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            return (int) (model.object() + model.ref() + model.primitive1() * 2
+                    + model.lengthForDoubleArrayOfSize(k));
+        }
+    }
+
+    /**
+     * 针对浮点类型(float/double)的计算类
+     */
+    public static class TopKDoubleEvaluator extends AbstractTopKEvaluator {
+        private transient InputReaders.DoubleReader reader;
+        /**
+         * 复用的出参对象
+         */
+        private transient DoubleWritable[] resultValues = new DoubleWritable[0];
+
+        @Override
+        protected void initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            reader = InputReaders.doubleReader(inputOI);
+        }
+
+        @Override
+        protected ObjectInspector getElementOI() {
+            return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new DoubleTopKBuffer();
+        }
+
+        @Override
+        protected void offer(TopKBuffer agg, Object parameter) {
+            ((DoubleTopKBuffer) agg).offer(reader.get(parameter));
+        }
+
+        @Override
+        protected void merge(TopKBuffer agg, byte[] bytes, int offset, int count) {
+            for (int i = 0; i < count; i++) {
+                ((DoubleTopKBuffer) agg).offer(Double.longBitsToDouble(
+                        BinaryCodec.readLong(bytes, offset + i * 8)));
+            }
+        }
+
+        @Override
+        protected void writePartial(TopKBuffer agg, int offset) {
+            double[] heap = ((DoubleTopKBuffer) agg).heap;
+            partialResult.setSize(offset + agg.size * 8);
+            byte[] bytes = partialResult.getBytes();
+            for (int i = 0; i < agg.size; i++) {
+                BinaryCodec.writeLong(bytes, offset + i * 8, Double.doubleToLongBits(heap[i]));
+            }
+        }
+
+        @Override
+        protected void fillResult(TopKBuffer agg) {
+            double[] heap = ((DoubleTopKBuffer) agg).heap;
+            if (resultValues.length < agg.size) {
+                resultValues = Arrays.copyOf(resultValues, agg.size);
+            }
+            for (int i = 0; i < agg.size; i++) {
+                if (null == resultValues[i]) {
+                    resultValues[i] = new DoubleWritable();
+                }
+                resultValues[i].set(heap[agg.size - 1 - i]);
+                result.add(resultValues[i]);
+            }
+        }
+    }
+
+    /**
+     * 字符串类型的堆，元素为复用的Text，按UTF-8字节比较
+     */
+    @GenericUDAFEvaluator.AggregationType(estimable = true)
+    static class StringTopKBuffer extends TopKBuffer {
+        Text[] heap;
+
+        @Override
+        void init(int k) {
+            this.k = k;
+            heap = new Text[k];
+        }
+
+        void offer(byte[] bytes, int start, int length) {
+            if (size < k) {
+                int i = size++;
+                // 先把新值复制到堆底空闲的Text中，再交换引用上浮
+                Text value = heap[i];
+                if (null == value) {
+                    value = new Text();
+                }
+                value.set(bytes, start, length);
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (heap[parent].compareTo(value) <= 0) {
+                        break;
+                    }
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = value;
+            } else if (Text.Comparator.compareBytes(bytes, start, length,
+                    heap[0].getBytes(), 0, heap[0].getLength()) > 0) {
+                // 复用被替换的堆顶的Text
+                Text value = heap[0];
+                value.set(bytes, start, length);
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && heap[child + 1].compareTo(heap[child]) < 0) {
+                        child++;
+                    }
+                    if (value.compareTo(heap[child]) <= 0) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = value;
+            }
+        }
+
+        @Override
+        void sort() {
+            Arrays.sort(heap, 0, size);
+        }
+
+        @Override
+        public int estimate() {
+            JavaDataModel model = JavaDataModel.get();
+            long estimate = model.object() + model.ref() + model.primitive1() * 2
+                    + model.lengthForObjectArrayOfSize(k);
+            for (int i = 0; i < size; i++) {
+                estimate += model.object() + model.lengthForByteArrayOfSize(heap[i].getBytes().length);
+            }
+            return (int) estimate;
+        }
+    }
+
+    /**
+     * 针对字符串类型(string/varchar/char)的计算类
+     */
+    public static class TopKStringEvaluator extends AbstractTopKEvaluator {
+        private transient InputReaders.TextReader reader;
+        /**
+         * 复用的出参对象
+         */
+        private transient Text[] resultValues = new Text[0];
+
+        @Override
+        protected void initInput(PrimitiveObjectInspector inputOI) throws HiveException {
+            reader = new InputReaders.TextReader(inputOI);
+        }
+
+        @Override
+        protected ObjectInspector getElementOI() {
+            return PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+        }
+
+        @Override
+        public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+            return new StringTopKBuffer();
+        }
+
+        @Override
+        protected void offer(TopKBuffer agg, Object parameter) {
+            Text value = reader.get(parameter);
+            ((StringTopKBuffer) agg).offer(value.getBytes(), 0, value.getLength());
+        }
+
+        @Override
+        protected void merge(TopKBuffer agg, byte[] bytes, int offset, int count) throws HiveException {
+            for (int i = 0; i < count; i++) {
+                int length = BinaryCodec.readInt(bytes, offset);
+                ((StringTopKBuffer) agg).offer(bytes, offset + 4, length);
+                offset += 4 + length;
+            }
+        }
+
+        @Override
+        protected void writePartial(TopKBuffer agg, int offset) {
+            Text[] heap = ((StringTopKBuffer) agg).heap;
+            int length = offset;
+            for (int i = 0; i < agg.size; i++) {
+                length += 4 + heap[i].getLength();
+            }
+            partialResult.setSize(length);
+            byte[] bytes = partialResult.getBytes();
+            for (int i = 0; i < agg.size; i++) {
+                BinaryCodec.writeInt(bytes, offset, heap[i].getLength());
+                System.arraycopy(heap[i].getBytes(), 0, bytes, offset + 4, heap[i].getLength());
+                offset += 4 + heap[i].getLength();
+            }
+        }
+
+        @Override
+        protected void fillResult(TopKBuffer agg) {
+            Text[] heap = ((StringTopKBuffer) agg).heap;
+            if (resultValues.length < agg.size) {
+                resultValues = Arrays.copyOf(resultValues, agg.size);
+            }
+            for (int i = 0; i < agg.size; i++) {
+                if (null == resultValues[i]) {
+                    resultValues[i] = new Text();
+                }
+                resultValues[i].set(heap[agg.size - 1 - i]);
+                result.add(resultValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.sjj.hive.udf;
+
+import com.sjj.hive.udaf.BloomFilter;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * 判断key是否可能存在于bloom_build生成的布隆过滤器中，返回false时key一定不存在
+ * 过滤器为常量时只在第一个非空值上反序列化一次，否则直接在每行的字节上判断，各行之间不创建对象
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "bloom_contains",
+        value = "_FUNC_(sketch, key) - Returns false if key is definitely not in the bloom filter built by bloom_build, "
+                + "true if it might be",
+        extended = "Example:\n"
+                + "  > SELECT * FROM big_table WHERE _FUNC_(${hivevar:sketch}, user_id);"
+)
+public class BloomContainsGenericUDF extends GenericUDF {
+    /**
+     * 过滤器的对象检查器
+     */
+    private transient BinaryObjectInspector sketchOI;
+    /**
+     * 过滤器为常量时反序列化后的过滤器，尚未读取时为NULL
+     */
+    private transient BloomFilter filter;
+    private transient boolean constantSketch;
+    /**
+     * 计算key的哈希，与bloom_build使用相同的规则
+     */
+    private transient BloomFilter.KeyHasher hasher;
+    /**
+     * 复用的出参对象
+     */
+    private transient BooleanWritable result;
+
+    /**
+     * 初始化函数，对参数类型及数量等进行检查
+     *
+     * @param arguments
+     *          The ObjectInspector for the arguments
+     * @return
+     * @throws UDFArgumentException
+     */
+    @Override
+    public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+        if (arguments.length != 2) {
+            throw new UDFArgumentLengthException(
+                    "bloom_contains requires 2 arguments, got " + arguments.length);
+        }
+        if (arguments[0].getCategory() != ObjectInspector.Category.PRIMITIVE
+                || ((PrimitiveObjectInspector) arguments[0]).getPrimitiveCategory()
+                != PrimitiveObjectInspector.PrimitiveCategory.BINARY) {
+            throw new UDFArgumentException(
+                    "bloom_contains only takes BINARY sketches, got " + arguments[0].getTypeName());
+        }
+        if (arguments[1].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+            throw new UDFArgumentException(
+                    "bloom_contains only takes primitive keys, got " + arguments[1].getTypeName());
+        }
+        sketchOI = (BinaryObjectInspector) arguments[0];
+        constantSketch = arguments[0] instanceof ConstantObjectInspector;
+        filter = null;
+        hasher = new BloomFilter.KeyHasher((PrimitiveObjectInspector) arguments[1]);
+        result = new BooleanWritable();
+        return PrimitiveObjectInspectorFactory.writableBooleanObjectInspector;
+    }
+
+    /**
+     * 执行计算流程
+     *
+     * @param arguments
+     *          The arguments as DeferedObject, use DeferedObject.get() to get the
+     *          actual argument Object. The Objects can be inspected by the
+     *          ObjectInspectors passed in the initialize call.
+     * @return
+     * @throws HiveException
+     */
+    @Override
+    public Object evaluate(DeferredObject[] arguments) throws HiveException {
+        if (constantSketch && null != filter) {
+            Object key = arguments[1].get();
+            if (null == key) {
+                return null;
+            }
+            result.set(filter.mightContain(hasher.hash(key)));
+            return result;
+        }
+        Object sketch = arguments[0].get();
+        Object key = arguments[1].get();
+        if (null == sketch || null == key) {
+            return null;
+        }
+        BytesWritable bytes = sketchOI.getPrimitiveWritableObject(sketch);
+        if (constantSketch) {
+            // 常量过滤器只反序列化一次，之后各行直接查询位数组
+            filter = new BloomFilter();
+            filter.set(bytes.getBytes(), 0, bytes.getLength());
+            result.set(filter.mightContain(hasher.hash(key)));
+        } else {
+            result.set(BloomFilter.mightContain(bytes.getBytes(), 0, bytes.getLength(), hasher.hash(key)));
+        }
+        return result;
+    }
+
+    /**
+     * @param children  入参字段名称
+     * @return  使用explain查看执行计划时，该函数的输出内容
+     */
+    @Override
+    public String getDisplayString(String[] children) {
+        return getStandardDisplayString("bloom_contains", children);
+    }
+}
@@ -0,0 +1,251 @@
+package com.sjj.hive.udf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * 返回数值数组中的最大非空元素，可代替LATERAL VIEW explode后再GROUP BY聚合的写法
+ * 元素通过对应类型的读取器直接读取为基本类型，Lazy及LazyBinary格式的数组不会为每个元素创建对象
+ * 整数数组返回bigint，float/double/string数组返回double，decimal数组返回相同类型的decimal
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "get_array_max",
+        value = "_FUNC_(array) - Returns the maximum non-null element of a numeric array, "
+                + "NULL if the array is NULL, empty or contains only NULLs",
+        extended = "Example:\n"
+                + "  > SELECT _FUNC_(array(1, 5, 3)) FROM table;\n"
+                + "  5"
+)
+public class GetArrayMaxGenericUDF extends GenericUDF {
+    /**
+     * 数组的对象检查器
+     */
+    private transient ListObjectInspector listOI;
+    /**
+     * 为true时求最大值，否则求最小值
+     */
+    private transient boolean max;
+    /**
+     * 按元素类型在初始化时选定的计算逻辑，计算时不再判断出参类型
+     */
+    private transient ElementEvaluator evaluator;
+
+    /**
+     * @return 是否求最大值，get_array_min返回false
+     */
+    protected boolean isMax() {
+        return true;
+    }
+
+    /**
+     * @return 函数名称
+     */
+    protected String getFuncName() {
+        return "get_array_max";
+    }
+
+    /**
+     * 初始化函数，对参数类型及数量等进行检查
+     *
+     * @param arguments
+     *          The ObjectInspector for the arguments
+     * @return
+     * @throws UDFArgumentException
+     */
+    @Override
+    public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+        if (arguments.length != 1) {
+            throw new UDFArgumentLengthException(
+                    getFuncName() + " requires 1 argument, got " + arguments.length);
+        }
+        if (arguments[0].getCategory() != ObjectInspector.Category.LIST
+                || ((ListObjectInspector) arguments[0]).getListElementObjectInspector().getCategory()
+                != ObjectInspector.Category.PRIMITIVE) {
+            throw new UDFArgumentException(
+                    getFuncName() + " only takes arrays of primitive types, got " + arguments[0].getTypeName());
+        }
+        listOI = (ListObjectInspector) arguments[0];
+        max = isMax();
+        PrimitiveObjectInspector elementOI = (PrimitiveObjectInspector) listOI.getListElementObjectInspector();
+        // 整数数组返回bigint，decimal数组返回相同类型的decimal，其余返回double
+        switch (elementOI.getPrimitiveCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                evaluator = new LongElementEvaluator(GetMaxNumGenericUDF.integerReader(elementOI));
+                return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+            case FLOAT:
+            case DOUBLE:
+            case STRING:
+                evaluator = new DoubleElementEvaluator(GetMaxNumGenericUDF.doubleReader(elementOI));
+                return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+            case DECIMAL:
+                evaluator = new DecimalElementEvaluator(GetMaxNumGenericUDF.decimalReader(elementOI));
+                return PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(elementOI.getTypeInfo());
+            default:
+                throw new UDFArgumentException(getFuncName()
+                        + " only takes arrays of SHORT/BYTE/INT/LONG/DOUBLE/FLOAT/STRING/DECIMAL types, got "
+                        + elementOI.getPrimitiveCategory());
+        }
+    }
+
+    /**
+     * 执行计算流程
+     *
+     * @param arguments
+     *          The arguments as DeferedObject, use DeferedObject.get() to get the
+     *          actual argument Object. The Objects can be inspected by the
+     *          ObjectInspectors passed in the initialize call.
+     * @return
+     * @throws HiveException
+     */
+    @Override
+    public Object evaluate(DeferredObject[] arguments) throws HiveException {
+        Object list = arguments[0].get();
+        if (null == list) {
+            return null;
+        }
+        // Lazy及LazyBinary数组在此处解析一次，之后按下标读取的元素对象在各行之间复用
+        int length = listOI.getListLength(list);
+        if (length <= 0) {
+            return null;
+        }
+        return evaluator.evaluate(list, length);
+    }
+
+    /**
+     * 各出参类型的计算逻辑，复用的出参对象也由其保存
+     */
+    private abstract class ElementEvaluator {
+        /**
+         * @param list      非空的数组
+         * @param length    数组长度，大于0
+         * @return  最大(get_array_min为最小)的非空元素，没有时返回NULL
+         */
+        abstract Object evaluate(Object list, int length);
+    }
+
+    private final class LongElementEvaluator extends ElementEvaluator {
+        private final GetMaxNumGenericUDF.LongNumberReader reader;
+        private final LongWritable result = new LongWritable();
+
+        LongElementEvaluator(GetMaxNumGenericUDF.LongNumberReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        Object evaluate(Object list, int length) {
+            boolean found = false;
+            long best = 0L;
+            for (int i = 0; i < length; i++) {
+                Object element = listOI.getListElement(list, i);
+                if (null == element) {
+                    continue;
+                }
+                long value = reader.getLong(element);
+                if (!found || (max ? value > best : value < best)) {
+                    best = value;
+                    found = true;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+            result.set(best);
+            return result;
+        }
+    }
+
+    /**
+     * 无法解析为数字的字符串元素视为NULL
+     */
+    private final class DoubleElementEvaluator extends ElementEvaluator {
+        private final GetMaxNumGenericUDF.DoubleNumberReader reader;
+        private final DoubleWritable result = new DoubleWritable();
+
+        DoubleElementEvaluator(GetMaxNumGenericUDF.DoubleNumberReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        Object evaluate(Object list, int length) {
+            boolean found = false;
+            double best = 0.0;
+            for (int i = 0; i < length; i++) {
+                Object element = listOI.getListElement(list, i);
+                if (null == element) {
+                    continue;
+                }
+                double value;
+                try {
+                    value = reader.getDouble(element);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (!found || (max ? value > best : value < best)) {
+                    best = value;
+                    found = true;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+            result.set(best);
+            return result;
+        }
+    }
+
+    private final class DecimalElementEvaluator extends ElementEvaluator {
+        private final GetMaxNumGenericUDF.DecimalNumberReader reader;
+        private final HiveDecimalWritable result = new HiveDecimalWritable();
+
+        DecimalElementEvaluator(GetMaxNumGenericUDF.DecimalNumberReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        Object evaluate(Object list, int length) {
+            HiveDecimalWritable best = null;
+            for (int i = 0; i < length; i++) {
+                Object element = listOI.getListElement(list, i);
+                if (null == element) {
+                    continue;
+                }
+                HiveDecimalWritable value = reader.getDecimal(element);
+                if (null != value && value.isSet()
+                        && (null == best || (max ? value.compareTo(best) > 0 : value.compareTo(best) < 0))) {
+                    best = value;
+                }
+            }
+            if (null == best) {
+                return null;
+            }
+            result.set(best);
+            return result;
+        }
+    }
+
+    /**
+     * @param children  入参字段名称
+     * @return  使用explain查看执行计划时，该函数的输出内容
+     */
+    @Override
+    public String getDisplayString(String[] children) {
+        return getStandardDisplayString(getFuncName(), children);
+    }
+}
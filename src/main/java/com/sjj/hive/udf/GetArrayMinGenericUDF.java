@@ -0,0 +1,30 @@
+package com.sjj.hive.udf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * 返回数值数组中的最小非空元素，计算逻辑与get_array_max一致
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "get_array_min",
+        value = "_FUNC_(array) - Returns the minimum non-null element of a numeric array, "
+                + "NULL if the array is NULL, empty or contains only NULLs",
+        extended = "Example:\n"
+                + "  > SELECT _FUNC_(array(1, 5, 3)) FROM table;\n"
+                + "  1"
+)
+public class GetArrayMinGenericUDF extends GetArrayMaxGenericUDF {
+    @Override
+    protected boolean isMax() {
+        return false;
+    }
+
+    @Override
+    protected String getFuncName() {
+        return "get_array_min";
+    }
+}
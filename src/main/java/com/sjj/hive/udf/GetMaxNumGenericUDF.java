@@ -3,17 +3,22 @@ package com.sjj.hive.udf;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedExpressions;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
 import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.hadoop.hive.serde2.lazy.fast.StringToDouble;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
-import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
-import org.apache.hadoop.hive.serde2.objectinspector.primitive.HiveDecimalObjectInspector;
-import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
-import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.*;
+import org.apache.hadoop.hive.serde2.typeinfo.DecimalTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.HiveDecimalUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
 
 import java.io.IOException;
 
@@ -24,26 +29,39 @@ import java.io.IOException;
  */
 @Description(
         name = "get_max_num_gen",
-        value = "_FUNC_(x, y, ...) - return the maximum value in x,y,...",
+        value = "_FUNC_(x, y, ...) - return the maximum value in x,y,..., the result is a bigint if all arguments "
+                + "are integers, a decimal if they are integers or decimals, otherwise a double",
         extended = "Example:\n"
                 + "  > SELECT _FUNC_(1, 5) FROM table;\n"
                 + "  5\n"
                 + "  > SELECT _FUNC_(-123, 789, 0) FROM table;\n"
                 + "  789"
 )
+@VectorizedExpressions({
+        VectorUDFGetMaxNum.ColCol.class,
+        VectorUDFGetMaxNum.ColScalar.class,
+        VectorUDFGetMaxNum.ScalarCol.class,
+        VectorUDFGetMaxNum.ColColCol.class,
+        VectorUDFGetMaxNum.ColColScalar.class,
+        VectorUDFGetMaxNum.ColScalarCol.class,
+        VectorUDFGetMaxNum.ScalarColCol.class,
+        VectorUDFGetMaxNum.ColScalarScalar.class,
+        VectorUDFGetMaxNum.ScalarColScalar.class,
+        VectorUDFGetMaxNum.ScalarScalarCol.class
+})
 public class GetMaxNumGenericUDF extends GenericUDF {
     /**
-     * 输入参数类型
+     * 出参为DECIMAL时的精度及小数位数
      */
-    private transient PrimitiveObjectInspector.PrimitiveCategory[] inputTypes;
+    private transient DecimalTypeInfo decimalType;
     /**
-     * 输入参数对象检查器
+     * 非常量参数的下标，计算时只读取这些参数
      */
-    private transient PrimitiveObjectInspector[] argumentOIs;
+    private transient int[] variableArguments;
     /**
-     * 输入参数对象转换器
+     * 按出参类型在初始化时选定的计算逻辑，计算时不再判断出参类型
      */
-    private transient ObjectInspectorConverters.Converter[] inputConverters;
+    private transient MaxEvaluator evaluator;
 
     /**
      * 初始化函数，对参数类型及数量等进行检查
@@ -60,46 +78,86 @@ public class GetMaxNumGenericUDF extends GenericUDF {
             throw new UDFArgumentLengthException(
                     "get_max_num_gen requires at least 2 arguments, got " + arguments.length);
         }
-        // 输入参数的相关信息
-        argumentOIs = new PrimitiveObjectInspector[arguments.length];
-        // 输入参数类型
-        inputTypes = new PrimitiveObjectInspector.PrimitiveCategory[arguments.length];
-        // 输入参数对应的类型转换器
-        inputConverters = new ObjectInspectorConverters.Converter[arguments.length];
+        // 出参类型，全部为整数时为LONG，含有FLOAT/DOUBLE/STRING时为DOUBLE，否则为DECIMAL
+        PrimitiveObjectInspector.PrimitiveCategory resultType = PrimitiveObjectInspector.PrimitiveCategory.LONG;
+        PrimitiveObjectInspector[] argumentOIs = new PrimitiveObjectInspector[arguments.length];
+        PrimitiveTypeInfo commonType = null;
         for (int i = 0; i < arguments.length; i++) {
             if (arguments[i].getCategory() != ObjectInspector.Category.PRIMITIVE) {
                 throw new UDFArgumentException(
                         "get_max_num_gen takes only primitive types, got " + arguments[i].getTypeName());
             }
             argumentOIs[i] = (PrimitiveObjectInspector) arguments[i];
-
-            inputTypes[i] = argumentOIs[i].getPrimitiveCategory();
-            switch (inputTypes[i]) {
-                case SHORT:
+            switch (argumentOIs[i].getPrimitiveCategory()) {
                 case BYTE:
+                case SHORT:
                 case INT:
-                    inputConverters[i] = ObjectInspectorConverters.getConverter(argumentOIs[i], PrimitiveObjectInspectorFactory.writableIntObjectInspector);
-                    break;
                 case LONG:
-                    inputConverters[i] = ObjectInspectorConverters.getConverter(argumentOIs[i], PrimitiveObjectInspectorFactory.writableLongObjectInspector);
                     break;
                 case FLOAT:
-                case STRING:
                 case DOUBLE:
-                    inputConverters[i] = ObjectInspectorConverters.getConverter(argumentOIs[i], PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+                case STRING:
+                    resultType = PrimitiveObjectInspector.PrimitiveCategory.DOUBLE;
                     break;
                 case DECIMAL:
-                    inputConverters[i] = ObjectInspectorConverters.getConverter(argumentOIs[i],
-                            PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(
-                                    ((PrimitiveObjectInspector) arguments[i]).getTypeInfo()));
+                    if (resultType == PrimitiveObjectInspector.PrimitiveCategory.LONG) {
+                        resultType = PrimitiveObjectInspector.PrimitiveCategory.DECIMAL;
+                    }
                     break;
                 default:
                     throw new UDFArgumentException(
-                            "get_max_num_gen only takes SHORT/BYTE/INT/LONG/DOUBLE/FLOAT/STRING/DECIMAL types, got " + inputTypes[i]);
+                            "get_max_num_gen only takes SHORT/BYTE/INT/LONG/DOUBLE/FLOAT/STRING/DECIMAL types, got "
+                                    + argumentOIs[i].getPrimitiveCategory());
+            }
+            // 整数与DECIMAL的公共类型，整数按其最大位数参与计算
+            if (resultType != PrimitiveObjectInspector.PrimitiveCategory.DOUBLE) {
+                commonType = null == commonType ? argumentOIs[i].getTypeInfo()
+                        : (PrimitiveTypeInfo) HiveDecimalUtils.getDecimalTypeForPrimitiveCategories(
+                        commonType, argumentOIs[i].getTypeInfo());
             }
+        }
 
+        PrimitiveTypeInfo resultTypeInfo;
+        switch (resultType) {
+            case LONG:
+                evaluator = new LongMaxEvaluator(argumentOIs);
+                resultTypeInfo = TypeInfoFactory.longTypeInfo;
+                break;
+            case DOUBLE:
+                evaluator = new DoubleMaxEvaluator(argumentOIs);
+                resultTypeInfo = TypeInfoFactory.doubleTypeInfo;
+                break;
+            default:
+                decimalType = (DecimalTypeInfo) commonType;
+                evaluator = new DecimalMaxEvaluator(argumentOIs);
+                resultTypeInfo = decimalType;
+                break;
         }
-        return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+
+        // 常量参数合并为一个最大值，每行只比较非常量参数，NULL常量被忽略
+        int variableCount = 0;
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] instanceof ConstantObjectInspector) {
+                Object value = ((ConstantObjectInspector) arguments[i]).getWritableConstantValue();
+                if (null != value) {
+                    evaluator.foldConstant(i, value);
+                }
+            } else {
+                variableCount++;
+            }
+        }
+        variableArguments = new int[variableCount];
+        for (int i = 0, j = 0; i < arguments.length; i++) {
+            if (!(arguments[i] instanceof ConstantObjectInspector)) {
+                variableArguments[j++] = i;
+            }
+        }
+        if (variableCount == 0) {
+            // 全部参数为常量时结果也是常量，可在编译阶段折叠
+            return PrimitiveObjectInspectorFactory.getPrimitiveWritableConstantObjectInspector(
+                    resultTypeInfo, evaluator.evaluateConstant());
+        }
+        return PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(resultTypeInfo);
     }
 
     /**
@@ -114,53 +172,202 @@ public class GetMaxNumGenericUDF extends GenericUDF {
      */
     @Override
     public Object evaluate(DeferredObject[] arguments) throws HiveException {
-        Double result = null;
-        for (int i = 0; i < arguments.length; i++) {
-            Object valObject = arguments[i].get();
-            if (valObject == null) {
-                continue;
+        return evaluator.evaluate(arguments);
+    }
+
+    /**
+     * 各出参类型的计算逻辑，常量参数合并后的最大值及复用的出参对象也由其保存
+     */
+    private abstract class MaxEvaluator {
+        /**
+         * 将一个非空的常量参数合并到常量最大值中，无法解析为数字的字符串被忽略
+         *
+         * @param i
+         * @param value
+         */
+        abstract void foldConstant(int i, Object value);
+
+        /**
+         * @return 全部参数为常量时的结果
+         */
+        abstract Object evaluateConstant();
+
+        abstract Object evaluate(DeferredObject[] arguments) throws HiveException;
+    }
+
+    /**
+     * 全部参数为整数时按long比较，不损失精度
+     */
+    private final class LongMaxEvaluator extends MaxEvaluator {
+        private final LongNumberReader[] readers;
+        private final LongWritable result = new LongWritable();
+        private boolean hasConstantMax;
+        private long constantMax;
+
+        LongMaxEvaluator(PrimitiveObjectInspector[] argumentOIs) throws UDFArgumentException {
+            readers = new LongNumberReader[argumentOIs.length];
+            for (int i = 0; i < argumentOIs.length; i++) {
+                readers[i] = integerReader(argumentOIs[i]);
             }
-            switch (inputTypes[i]) {
-                case SHORT:
-                case BYTE:
-                case INT:
-                    valObject = inputConverters[i].convert(valObject);
-                    if (result == null || ((IntWritable) valObject).get() > result) {
-                        result = (double) ((IntWritable) valObject).get();
-                    }
-                   break;
-                case LONG:
-                    valObject = inputConverters[i].convert(valObject);
-                    if (result == null || ((LongWritable) valObject).get() > result) {
-                        result = (double) ((LongWritable) valObject).get();
-                    }
-                    break;
-                case FLOAT:
-                case STRING:
-                case DOUBLE:
-                    valObject = inputConverters[i].convert(valObject);
-                    if (result == null || ((DoubleWritable) valObject).get() > result) {
-                        result = ((DoubleWritable) valObject).get();
-                    }
-                    break;
-                case DECIMAL:
-//                    HiveDecimalObjectInspector decimalOI =
-//                            (HiveDecimalObjectInspector) argumentOIs[i];
-//                    HiveDecimalWritable val = decimalOI.getPrimitiveWritableObject(valObject);
+        }
 
-                    valObject = inputConverters[i].convert(valObject);
-                    HiveDecimalWritable val = (HiveDecimalWritable) valObject;
+        @Override
+        void foldConstant(int i, Object value) {
+            long longValue = readers[i].getLong(value);
+            if (!hasConstantMax || longValue > constantMax) {
+                constantMax = longValue;
+                hasConstantMax = true;
+            }
+        }
 
-                    if (result == null || val.doubleValue() > result) {
-                        result = val.doubleValue();
-                    }
-                    break;
-                default:
-                    throw new UDFArgumentException(
-                            "get_max_num_gen only takes SHORT/BYTE/INT/LONG/DOUBLE/FLOAT/STRING/DECIMAL types, got " + inputTypes[i]);
-               }
-           }
-        return result == null ? null : new DoubleWritable(result);
+        @Override
+        Object evaluateConstant() {
+            return hasConstantMax ? new LongWritable(constantMax) : null;
+        }
+
+        @Override
+        Object evaluate(DeferredObject[] arguments) throws HiveException {
+            boolean found = hasConstantMax;
+            long max = constantMax;
+            for (int j = 0; j < variableArguments.length; j++) {
+                int i = variableArguments[j];
+                Object valObject = arguments[i].get();
+                if (valObject == null) {
+                    continue;
+                }
+                long value = readers[i].getLong(valObject);
+                if (!found || value > max) {
+                    max = value;
+                    found = true;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+            result.set(max);
+            return result;
+        }
+    }
+
+    /**
+     * 含有FLOAT/DOUBLE/STRING参数时按double比较，无法解析为数字的字符串视为NULL
+     */
+    private final class DoubleMaxEvaluator extends MaxEvaluator {
+        private final DoubleNumberReader[] readers;
+        private final DoubleWritable result = new DoubleWritable();
+        private boolean hasConstantMax;
+        private double constantMax;
+
+        DoubleMaxEvaluator(PrimitiveObjectInspector[] argumentOIs) throws UDFArgumentException {
+            readers = new DoubleNumberReader[argumentOIs.length];
+            for (int i = 0; i < argumentOIs.length; i++) {
+                readers[i] = doubleReader(argumentOIs[i]);
+            }
+        }
+
+        @Override
+        void foldConstant(int i, Object value) {
+            double doubleValue;
+            try {
+                doubleValue = readers[i].getDouble(value);
+            } catch (NumberFormatException e) {
+                return;
+            }
+            if (!hasConstantMax || doubleValue > constantMax) {
+                constantMax = doubleValue;
+                hasConstantMax = true;
+            }
+        }
+
+        @Override
+        Object evaluateConstant() {
+            return hasConstantMax ? new DoubleWritable(constantMax) : null;
+        }
+
+        @Override
+        Object evaluate(DeferredObject[] arguments) throws HiveException {
+            boolean found = hasConstantMax;
+            double max = constantMax;
+            for (int j = 0; j < variableArguments.length; j++) {
+                int i = variableArguments[j];
+                Object valObject = arguments[i].get();
+                if (valObject == null) {
+                    continue;
+                }
+                double value;
+                try {
+                    value = readers[i].getDouble(valObject);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (!found || value > max) {
+                    max = value;
+                    found = true;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+            result.set(max);
+            return result;
+        }
+    }
+
+    /**
+     * 只含有整数及DECIMAL参数时按DECIMAL比较，结果按公共类型的精度及小数位数输出
+     */
+    private final class DecimalMaxEvaluator extends MaxEvaluator {
+        private final DecimalNumberReader[] readers;
+        private final HiveDecimalWritable result = new HiveDecimalWritable();
+        private HiveDecimalWritable constantMax;
+
+        DecimalMaxEvaluator(PrimitiveObjectInspector[] argumentOIs) throws UDFArgumentException {
+            readers = new DecimalNumberReader[argumentOIs.length];
+            for (int i = 0; i < argumentOIs.length; i++) {
+                readers[i] = decimalReader(argumentOIs[i]);
+            }
+        }
+
+        @Override
+        void foldConstant(int i, Object value) {
+            HiveDecimalWritable decimalValue = readers[i].getDecimal(value);
+            if (null != decimalValue && decimalValue.isSet()
+                    && (null == constantMax || decimalValue.compareTo(constantMax) > 0)) {
+                // 整数的读取器复用同一个对象，需要复制
+                constantMax = new HiveDecimalWritable(decimalValue);
+            }
+        }
+
+        @Override
+        Object evaluateConstant() {
+            if (null == constantMax) {
+                return null;
+            }
+            HiveDecimalWritable value = new HiveDecimalWritable();
+            value.set(constantMax, decimalType.getPrecision(), decimalType.getScale());
+            return value.isSet() ? value : null;
+        }
+
+        @Override
+        Object evaluate(DeferredObject[] arguments) throws HiveException {
+            HiveDecimalWritable max = constantMax;
+            for (int j = 0; j < variableArguments.length; j++) {
+                int i = variableArguments[j];
+                Object valObject = arguments[i].get();
+                if (valObject == null) {
+                    continue;
+                }
+                HiveDecimalWritable value = readers[i].getDecimal(valObject);
+                if (null != value && value.isSet() && (null == max || value.compareTo(max) > 0)) {
+                    max = value;
+                }
+            }
+            if (null == max) {
+                return null;
+            }
+            result.set(max, decimalType.getPrecision(), decimalType.getScale());
+            return result.isSet() ? result : null;
+        }
     }
 
     /**
@@ -182,4 +389,212 @@ public class GetMaxNumGenericUDF extends GenericUDF {
     public String getDisplayString(String[] children) {
         return getStandardDisplayString("test-get_max_num_gen", children);
     }
+
+    /**
+     * 按出参类型划分的参数读取器，每种参数类型对应一个实现，只实现其能够读取的出参类型
+     * 整数参数可读取为long、double及DECIMAL，DECIMAL参数可读取为double及DECIMAL，其余参数只能读取为double
+     */
+    interface LongNumberReader {
+        long getLong(Object o);
+    }
+
+    interface DoubleNumberReader {
+        /**
+         * 无法解析为数字的字符串抛出NumberFormatException
+         */
+        double getDouble(Object o);
+    }
+
+    interface DecimalNumberReader {
+        HiveDecimalWritable getDecimal(Object o);
+    }
+
+    /**
+     * 创建整数参数的读取器
+     *
+     * @param oi    tinyint/smallint/int/bigint类型的检查器
+     * @return
+     * @throws UDFArgumentException
+     */
+    static IntegerReader integerReader(PrimitiveObjectInspector oi) throws UDFArgumentException {
+        switch (oi.getPrimitiveCategory()) {
+            case BYTE:
+                return new ByteReader((ByteObjectInspector) oi);
+            case SHORT:
+                return new ShortReader((ShortObjectInspector) oi);
+            case INT:
+                return new IntReader((IntObjectInspector) oi);
+            case LONG:
+                return new LongReader((LongObjectInspector) oi);
+            default:
+                throw new UDFArgumentException("Only integer types can be read as bigint, got " + oi.getTypeName());
+        }
+    }
+
+    /**
+     * 创建读取为double的读取器
+     *
+     * @param oi    整数、float/double/string或decimal类型的检查器
+     * @return
+     * @throws UDFArgumentException
+     */
+    static DoubleNumberReader doubleReader(PrimitiveObjectInspector oi) throws UDFArgumentException {
+        switch (oi.getPrimitiveCategory()) {
+            case FLOAT:
+                return new FloatReader((FloatObjectInspector) oi);
+            case DOUBLE:
+                return new DoubleReader((DoubleObjectInspector) oi);
+            case STRING:
+                return new StringReader((StringObjectInspector) oi);
+            case DECIMAL:
+                return new DecimalReader((HiveDecimalObjectInspector) oi);
+            default:
+                return integerReader(oi);
+        }
+    }
+
+    /**
+     * 创建读取为DECIMAL的读取器
+     *
+     * @param oi    整数或decimal类型的检查器
+     * @return
+     * @throws UDFArgumentException
+     */
+    static DecimalNumberReader decimalReader(PrimitiveObjectInspector oi) throws UDFArgumentException {
+        if (oi.getPrimitiveCategory() == PrimitiveObjectInspector.PrimitiveCategory.DECIMAL) {
+            return new DecimalReader((HiveDecimalObjectInspector) oi);
+        }
+        return integerReader(oi);
+    }
+
+    /**
+     * 整数参数的读取器，转换为DECIMAL时复用同一个对象
+     */
+    abstract static class IntegerReader implements LongNumberReader, DoubleNumberReader, DecimalNumberReader {
+        private final HiveDecimalWritable decimal = new HiveDecimalWritable();
+
+        @Override
+        public double getDouble(Object o) {
+            return getLong(o);
+        }
+
+        @Override
+        public HiveDecimalWritable getDecimal(Object o) {
+            decimal.setFromLong(getLong(o));
+            return decimal;
+        }
+    }
+
+    static class ByteReader extends IntegerReader {
+        private final ByteObjectInspector oi;
+
+        ByteReader(ByteObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        public long getLong(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    static class ShortReader extends IntegerReader {
+        private final ShortObjectInspector oi;
+
+        ShortReader(ShortObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        public long getLong(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    static class IntReader extends IntegerReader {
+        private final IntObjectInspector oi;
+
+        IntReader(IntObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        public long getLong(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    static class LongReader extends IntegerReader {
+        private final LongObjectInspector oi;
+
+        LongReader(LongObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        public long getLong(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    static class FloatReader implements DoubleNumberReader {
+        private final FloatObjectInspector oi;
+
+        FloatReader(FloatObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        public double getDouble(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    static class DoubleReader implements DoubleNumberReader {
+        private final DoubleObjectInspector oi;
+
+        DoubleReader(DoubleObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        public double getDouble(Object o) {
+            return oi.get(o);
+        }
+    }
+
+    /**
+     * 字符串参数的读取器，直接解析UTF-8字节，与向量化计算的规则一致，无法解析时抛出NumberFormatException
+     */
+    static class StringReader implements DoubleNumberReader {
+        private final StringObjectInspector oi;
+
+        StringReader(StringObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        public double getDouble(Object o) {
+            Text text = oi.getPrimitiveWritableObject(o);
+            return StringToDouble.strtod(text.getBytes(), 0, text.getLength());
+        }
+    }
+
+    static class DecimalReader implements DoubleNumberReader, DecimalNumberReader {
+        private final HiveDecimalObjectInspector oi;
+
+        DecimalReader(HiveDecimalObjectInspector oi) {
+            this.oi = oi;
+        }
+
+        @Override
+        public double getDouble(Object o) {
+            return oi.getPrimitiveWritableObject(o).doubleValue();
+        }
+
+        @Override
+        public HiveDecimalWritable getDecimal(Object o) {
+            return oi.getPrimitiveWritableObject(o);
+        }
+    }
 }
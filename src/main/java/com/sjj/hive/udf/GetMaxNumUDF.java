@@ -1,5 +1,6 @@
 package com.sjj.hive.udf;
 
+import com.sjj.hive.processor.GenericAdapter;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDF;
 
@@ -17,6 +18,7 @@ import org.apache.hadoop.hive.ql.exec.UDF;
                 + "  > SELECT _FUNC_(-123, 789, 0) FROM table;\n"
                 + "  789"
 )
+@GenericAdapter
 public class GetMaxNumUDF extends UDF {
     /**
      * 返回两个数字中的最大值，都为空则返回null
@@ -0,0 +1,101 @@
+package com.sjj.hive.udf;
+
+import com.sjj.hive.udaf.HyperLogLog;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * 计算hll_sketch或hll_merge生成的HyperLogLog草图的基数，草图对象在各行之间复用
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "hll_estimate",
+        value = "_FUNC_(sketch) - Returns the approximate number of distinct values in a HyperLogLog sketch",
+        extended = "Example:\n"
+                + "  > SELECT week, _FUNC_(hll_merge(sketch)) FROM daily_uv GROUP BY week;"
+)
+public class HllEstimateGenericUDF extends GenericUDF {
+    /**
+     * 草图的对象检查器
+     */
+    private transient BinaryObjectInspector sketchOI;
+    /**
+     * 复用的草图
+     */
+    private transient HyperLogLog hll;
+    /**
+     * 复用的出参对象
+     */
+    private transient LongWritable result;
+
+    /**
+     * 初始化函数，对参数类型及数量等进行检查
+     *
+     * @param arguments
+     *          The ObjectInspector for the arguments
+     * @return
+     * @throws UDFArgumentException
+     */
+    @Override
+    public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+        if (arguments.length != 1) {
+            throw new UDFArgumentLengthException(
+                    "hll_estimate requires 1 argument, got " + arguments.length);
+        }
+        if (arguments[0].getCategory() != ObjectInspector.Category.PRIMITIVE
+                || ((PrimitiveObjectInspector) arguments[0]).getPrimitiveCategory()
+                != PrimitiveObjectInspector.PrimitiveCategory.BINARY) {
+            throw new UDFArgumentException(
+                    "hll_estimate only takes BINARY sketches, got " + arguments[0].getTypeName());
+        }
+        sketchOI = (BinaryObjectInspector) arguments[0];
+        hll = new HyperLogLog();
+        result = new LongWritable();
+        return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+    }
+
+    /**
+     * 执行计算流程
+     *
+     * @param arguments
+     *          The arguments as DeferedObject, use DeferedObject.get() to get the
+     *          actual argument Object. The Objects can be inspected by the
+     *          ObjectInspectors passed in the initialize call.
+     * @return
+     * @throws HiveException
+     */
+    @Override
+    public Object evaluate(DeferredObject[] arguments) throws HiveException {
+        Object sketch = arguments[0].get();
+        if (null == sketch) {
+            return null;
+        }
+        BytesWritable bytes = sketchOI.getPrimitiveWritableObject(sketch);
+        // 精度由草图决定，精度与上一行相同时复用已分配的数组
+        hll.reset(0);
+        hll.merge(bytes.getBytes(), 0, bytes.getLength());
+        result.set(hll.estimate());
+        return result;
+    }
+
+    /**
+     * @param children  入参字段名称
+     * @return  使用explain查看执行计划时，该函数的输出内容
+     */
+    @Override
+    public String getDisplayString(String[] children) {
+        return getStandardDisplayString("hll_estimate", children);
+    }
+}
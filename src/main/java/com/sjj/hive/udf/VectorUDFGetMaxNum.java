@@ -0,0 +1,736 @@
+package com.sjj.hive.udf;
+
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.NullUtil;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.hadoop.hive.serde2.lazy.fast.StringToDouble;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+
+/**
+ * get_max_num_gen的向量化计算，按列对整个batch求各参数的最大值，出参类型与GetMaxNumGenericUDF的规则一致
+ * Hive最多按3个参数匹配向量化表达式，每种列/常量组合对应一个内部类，计算逻辑都在本类中
+ * 常量参数按重复且非空的列处理，参数按顺序合并，与行模式的结果完全一致
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+public abstract class VectorUDFGetMaxNum extends VectorExpression {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 各参数的列号，常量参数为-1
+     */
+    private final int[] columns;
+    /**
+     * 各参数的常量值，列参数为NULL
+     */
+    private final Object[] scalars;
+
+    /**
+     * 出参类型，初始化时由出参类型信息确定
+     */
+    private transient PrimitiveObjectInspector.PrimitiveCategory resultType;
+    /**
+     * 常量参数转换为出参类型后的值，按长度为1的重复列处理，无法解析为数字的字符串常量视为NULL
+     */
+    private transient long[][] longScalars;
+    private transient double[][] doubleScalars;
+    private transient HiveDecimalWritable[][] decimalScalars;
+    private transient boolean[] scalarIsNull;
+    /**
+     * 参数类型与出参类型不同时，转换后的值及空值标记，每个参数各自复用
+     */
+    private transient double[][] doubleScratch;
+    private transient HiveDecimalWritable[][] decimalScratch;
+    private transient boolean[][] isNullScratch;
+    /**
+     * 出参为DECIMAL时各行当前最大值的引用，为NULL表示该行尚无非空值
+     */
+    private transient HiveDecimalWritable[] decimalMax;
+
+    public VectorUDFGetMaxNum() {
+        super();
+        columns = null;
+        scalars = null;
+    }
+
+    public VectorUDFGetMaxNum(int[] columns, Object[] scalars, int outputColumnNum) {
+        super(outputColumnNum);
+        this.columns = columns;
+        this.scalars = scalars;
+    }
+
+    /**
+     * 根据出参类型转换常量参数
+     *
+     * @throws HiveException
+     */
+    @Override
+    public void transientInit() throws HiveException {
+        super.transientInit();
+        resultType = ((PrimitiveTypeInfo) outputTypeInfo).getPrimitiveCategory();
+        int length = columns.length;
+        longScalars = new long[length][];
+        doubleScalars = new double[length][];
+        decimalScalars = new HiveDecimalWritable[length][];
+        scalarIsNull = new boolean[length];
+        doubleScratch = new double[length][];
+        decimalScratch = new HiveDecimalWritable[length][];
+        isNullScratch = new boolean[length][];
+        for (int j = 0; j < length; j++) {
+            if (columns[j] >= 0) {
+                continue;
+            }
+            Object value = scalars[j];
+            switch (resultType) {
+                case LONG:
+                    longScalars[j] = new long[]{((Number) value).longValue()};
+                    break;
+                case DOUBLE:
+                    try {
+                        doubleScalars[j] = new double[]{toDouble(value)};
+                    } catch (NumberFormatException e) {
+                        scalarIsNull[j] = true;
+                    }
+                    break;
+                default:
+                    decimalScalars[j] = new HiveDecimalWritable[]{value instanceof HiveDecimal
+                            ? new HiveDecimalWritable((HiveDecimal) value)
+                            : new HiveDecimalWritable(((Number) value).longValue())};
+                    break;
+            }
+        }
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            return StringToDouble.strtod(bytes, 0, bytes.length);
+        } else if (value instanceof HiveDecimal) {
+            return ((HiveDecimal) value).doubleValue();
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    /**
+     * 对整个batch计算最大值，所有参数都是重复值时只计算第一行
+     *
+     * @param batch
+     * @throws HiveException
+     */
+    @Override
+    public void evaluate(VectorizedRowBatch batch) throws HiveException {
+        if (childExpressions != null) {
+            super.evaluateChildren(batch);
+        }
+        int n = batch.size;
+        if (n == 0) {
+            return;
+        }
+        boolean repeating = true;
+        for (int j = 0; j < columns.length; j++) {
+            if (columns[j] >= 0 && !batch.cols[columns[j]].isRepeating) {
+                repeating = false;
+                break;
+            }
+        }
+        boolean selectedInUse = batch.selectedInUse && !repeating;
+        int[] sel = batch.selected;
+        if (repeating) {
+            n = 1;
+        }
+        ColumnVector outputColVector = batch.cols[outputColumnNum];
+        outputColVector.isRepeating = repeating;
+        // 先将所有行置为NULL，再按参数顺序合并
+        boolean[] outputIsNull = outputColVector.isNull;
+        if (selectedInUse) {
+            for (int i = 0; i < n; i++) {
+                outputIsNull[sel[i]] = true;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                outputIsNull[i] = true;
+            }
+        }
+
+        boolean noNulls;
+        switch (resultType) {
+            case LONG:
+                noNulls = evaluateLong(batch, (LongColumnVector) outputColVector, selectedInUse, sel, n);
+                outputColVector.noNulls = noNulls;
+                NullUtil.setNullDataEntriesLong((LongColumnVector) outputColVector, selectedInUse, sel, n);
+                break;
+            case DOUBLE:
+                noNulls = evaluateDouble(batch, (DoubleColumnVector) outputColVector, selectedInUse, sel, n);
+                outputColVector.noNulls = noNulls;
+                NullUtil.setNullDataEntriesDouble((DoubleColumnVector) outputColVector, selectedInUse, sel, n);
+                break;
+            default:
+                evaluateDecimal(batch, (DecimalColumnVector) outputColVector, selectedInUse, sel, n);
+                break;
+        }
+    }
+
+    /**
+     * 全部参数为整数列或整数常量
+     *
+     * @return 是否所有行都不为NULL
+     */
+    private boolean evaluateLong(VectorizedRowBatch batch, LongColumnVector outputColVector,
+                                 boolean selectedInUse, int[] sel, int n) {
+        boolean noNulls = false;
+        for (int j = 0; j < columns.length; j++) {
+            if (columns[j] < 0) {
+                maxLong(outputColVector, longScalars[j], null, true, true, selectedInUse, sel, n);
+                noNulls = true;
+            } else {
+                LongColumnVector inputColVector = (LongColumnVector) batch.cols[columns[j]];
+                maxLong(outputColVector, inputColVector.vector, inputColVector.isNull,
+                        inputColVector.isRepeating, inputColVector.noNulls, selectedInUse, sel, n);
+                noNulls |= inputColVector.noNulls;
+            }
+        }
+        return noNulls;
+    }
+
+    /**
+     * 将一个参数合并到出参中，出参为NULL或参数值更大时替换
+     */
+    private static void maxLong(LongColumnVector outputColVector, long[] vector, boolean[] isNull,
+                                boolean repeating, boolean noNulls, boolean selectedInUse, int[] sel, int n) {
+        long[] outputVector = outputColVector.vector;
+        boolean[] outputIsNull = outputColVector.isNull;
+        if (repeating) {
+            if (!noNulls && isNull[0]) {
+                return;
+            }
+            long value = vector[0];
+            if (selectedInUse) {
+                for (int i = 0; i < n; i++) {
+                    int row = sel[i];
+                    if (outputIsNull[row] || value > outputVector[row]) {
+                        outputVector[row] = value;
+                        outputIsNull[row] = false;
+                    }
+                }
+            } else {
+                for (int row = 0; row < n; row++) {
+                    if (outputIsNull[row] || value > outputVector[row]) {
+                        outputVector[row] = value;
+                        outputIsNull[row] = false;
+                    }
+                }
+            }
+        } else if (noNulls) {
+            if (selectedInUse) {
+                for (int i = 0; i < n; i++) {
+                    int row = sel[i];
+                    if (outputIsNull[row] || vector[row] > outputVector[row]) {
+                        outputVector[row] = vector[row];
+                        outputIsNull[row] = false;
+                    }
+                }
+            } else {
+                for (int row = 0; row < n; row++) {
+                    if (outputIsNull[row] || vector[row] > outputVector[row]) {
+                        outputVector[row] = vector[row];
+                        outputIsNull[row] = false;
+                    }
+                }
+            }
+        } else {
+            if (selectedInUse) {
+                for (int i = 0; i < n; i++) {
+                    int row = sel[i];
+                    if (!isNull[row] && (outputIsNull[row] || vector[row] > outputVector[row])) {
+                        outputVector[row] = vector[row];
+                        outputIsNull[row] = false;
+                    }
+                }
+            } else {
+                for (int row = 0; row < n; row++) {
+                    if (!isNull[row] && (outputIsNull[row] || vector[row] > outputVector[row])) {
+                        outputVector[row] = vector[row];
+                        outputIsNull[row] = false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 含有浮点数或字符串参数，整数、DECIMAL及字符串列先转换为double
+     *
+     * @return 是否所有行都不为NULL
+     */
+    private boolean evaluateDouble(VectorizedRowBatch batch, DoubleColumnVector outputColVector,
+                                   boolean selectedInUse, int[] sel, int n) {
+        boolean noNulls = false;
+        for (int j = 0; j < columns.length; j++) {
+            if (columns[j] < 0) {
+                if (!scalarIsNull[j]) {
+                    maxDouble(outputColVector, doubleScalars[j], null, true, true, selectedInUse, sel, n);
+                    noNulls = true;
+                }
+                continue;
+            }
+            ColumnVector inputColVector = batch.cols[columns[j]];
+            if (inputColVector instanceof DoubleColumnVector) {
+                maxDouble(outputColVector, ((DoubleColumnVector) inputColVector).vector, inputColVector.isNull,
+                        inputColVector.isRepeating, inputColVector.noNulls, selectedInUse, sel, n);
+                noNulls |= inputColVector.noNulls;
+                continue;
+            }
+
+            if (null == doubleScratch[j]) {
+                doubleScratch[j] = new double[batch.getMaxSize()];
+                isNullScratch[j] = new boolean[batch.getMaxSize()];
+            }
+            double[] vector = doubleScratch[j];
+            boolean[] isNull = isNullScratch[j];
+            int size = inputColVector.isRepeating ? 1 : n;
+            boolean rowsSelected = selectedInUse && !inputColVector.isRepeating;
+            // 按列类型选择转换方法，每种类型一个循环，循环内不再判断列类型
+            boolean inputNoNulls = inputColVector.noNulls;
+            if (inputColVector instanceof LongColumnVector) {
+                longToDouble((LongColumnVector) inputColVector, vector, isNull, rowsSelected, sel, size);
+            } else if (inputColVector instanceof DecimalColumnVector) {
+                decimalToDouble((DecimalColumnVector) inputColVector, vector, isNull, rowsSelected, sel, size);
+            } else {
+                inputNoNulls = bytesToDouble((BytesColumnVector) inputColVector, vector, isNull,
+                        rowsSelected, sel, size);
+            }
+            maxDouble(outputColVector, vector, isNull, inputColVector.isRepeating, inputNoNulls, selectedInUse, sel, n);
+            noNulls |= inputNoNulls;
+        }
+        return noNulls;
+    }
+
+    /**
+     * 将整数列转换为double
+     */
+    private static void longToDouble(LongColumnVector inputColVector, double[] vector, boolean[] isNull,
+                                     boolean rowsSelected, int[] sel, int size) {
+        long[] inputVector = inputColVector.vector;
+        boolean[] inputIsNull = inputColVector.isNull;
+        boolean inputNoNulls = inputColVector.noNulls;
+        for (int i = 0; i < size; i++) {
+            int row = rowsSelected ? sel[i] : i;
+            isNull[row] = !inputNoNulls && inputIsNull[row];
+            vector[row] = inputVector[row];
+        }
+    }
+
+    /**
+     * 将DECIMAL列转换为double
+     */
+    private static void decimalToDouble(DecimalColumnVector inputColVector, double[] vector, boolean[] isNull,
+                                        boolean rowsSelected, int[] sel, int size) {
+        HiveDecimalWritable[] inputVector = inputColVector.vector;
+        boolean[] inputIsNull = inputColVector.isNull;
+        boolean inputNoNulls = inputColVector.noNulls;
+        for (int i = 0; i < size; i++) {
+            int row = rowsSelected ? sel[i] : i;
+            isNull[row] = !inputNoNulls && inputIsNull[row];
+            if (!isNull[row]) {
+                vector[row] = inputVector[row].doubleValue();
+            }
+        }
+    }
+
+    /**
+     * 将字符串列解析为double，无法解析的值视为NULL
+     *
+     * @return 转换后是否所有行都不为NULL
+     */
+    private static boolean bytesToDouble(BytesColumnVector inputColVector, double[] vector, boolean[] isNull,
+                                         boolean rowsSelected, int[] sel, int size) {
+        byte[][] inputVector = inputColVector.vector;
+        int[] start = inputColVector.start;
+        int[] length = inputColVector.length;
+        boolean[] inputIsNull = inputColVector.isNull;
+        boolean inputNoNulls = inputColVector.noNulls;
+        boolean noNulls = inputNoNulls;
+        for (int i = 0; i < size; i++) {
+            int row = rowsSelected ? sel[i] : i;
+            isNull[row] = !inputNoNulls && inputIsNull[row];
+            if (isNull[row]) {
+                continue;
+            }
+            try {
+                vector[row] = StringToDouble.strtod(inputVector[row], start[row], length[row]);
+            } catch (NumberFormatException e) {
+                isNull[row] = true;
+                noNulls = false;
+            }
+        }
+        return noNulls;
+    }
+
+    /**
+     * 将一个参数合并到出参中，出参为NULL或参数值更大时替换
+     */
+    private static void maxDouble(DoubleColumnVector outputColVector, double[] vector, boolean[] isNull,
+                                  boolean repeating, boolean noNulls, boolean selectedInUse, int[] sel, int n) {
+        double[] outputVector = outputColVector.vector;
+        boolean[] outputIsNull = outputColVector.isNull;
+        if (repeating) {
+            if (!noNulls && isNull[0]) {
+                return;
+            }
+            double value = vector[0];
+            if (selectedInUse) {
+                for (int i = 0; i < n; i++) {
+                    int row = sel[i];
+                    if (outputIsNull[row] || value > outputVector[row]) {
+                        outputVector[row] = value;
+                        outputIsNull[row] = false;
+                    }
+                }
+            } else {
+                for (int row = 0; row < n; row++) {
+                    if (outputIsNull[row] || value > outputVector[row]) {
+                        outputVector[row] = value;
+                        outputIsNull[row] = false;
+                    }
+                }
+            }
+        } else if (noNulls) {
+            if (selectedInUse) {
+                for (int i = 0; i < n; i++) {
+                    int row = sel[i];
+                    if (outputIsNull[row] || vector[row] > outputVector[row]) {
+                        outputVector[row] = vector[row];
+                        outputIsNull[row] = false;
+                    }
+                }
+            } else {
+                for (int row = 0; row < n; row++) {
+                    if (outputIsNull[row] || vector[row] > outputVector[row]) {
+                        outputVector[row] = vector[row];
+                        outputIsNull[row] = false;
+                    }
+                }
+            }
+        } else {
+            if (selectedInUse) {
+                for (int i = 0; i < n; i++) {
+                    int row = sel[i];
+                    if (!isNull[row] && (outputIsNull[row] || vector[row] > outputVector[row])) {
+                        outputVector[row] = vector[row];
+                        outputIsNull[row] = false;
+                    }
+                }
+            } else {
+                for (int row = 0; row < n; row++) {
+                    if (!isNull[row] && (outputIsNull[row] || vector[row] > outputVector[row])) {
+                        outputVector[row] = vector[row];
+                        outputIsNull[row] = false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 只含有整数及DECIMAL参数，先记录各行最大值的引用，最后按出参的精度及小数位数写入，溢出时为NULL
+     */
+    private void evaluateDecimal(VectorizedRowBatch batch, DecimalColumnVector outputColVector,
+                                 boolean selectedInUse, int[] sel, int n) {
+        if (null == decimalMax) {
+            decimalMax = new HiveDecimalWritable[batch.getMaxSize()];
+        }
+        HiveDecimalWritable[] max = decimalMax;
+        for (int i = 0; i < n; i++) {
+            max[selectedInUse ? sel[i] : i] = null;
+        }
+        for (int j = 0; j < columns.length; j++) {
+            HiveDecimalWritable[] vector;
+            boolean[] isNull = null;
+            boolean repeating = true;
+            boolean noNulls = true;
+            if (columns[j] < 0) {
+                vector = decimalScalars[j];
+            } else {
+                ColumnVector inputColVector = batch.cols[columns[j]];
+                isNull = inputColVector.isNull;
+                repeating = inputColVector.isRepeating;
+                noNulls = inputColVector.noNulls;
+                if (inputColVector instanceof DecimalColumnVector) {
+                    vector = ((DecimalColumnVector) inputColVector).vector;
+                } else {
+                    // 整数列转换为复用的DECIMAL对象
+                    if (null == decimalScratch[j]) {
+                        decimalScratch[j] = new HiveDecimalWritable[batch.getMaxSize()];
+                        for (int i = 0; i < decimalScratch[j].length; i++) {
+                            decimalScratch[j][i] = new HiveDecimalWritable();
+                        }
+                    }
+                    vector = decimalScratch[j];
+                    long[] longVector = ((LongColumnVector) inputColVector).vector;
+                    int size = repeating ? 1 : n;
+                    for (int i = 0; i < size; i++) {
+                        int row = selectedInUse && !repeating ? sel[i] : i;
+                        vector[row].setFromLong(longVector[row]);
+                    }
+                }
+            }
+
+            if (repeating) {
+                if (!noNulls && isNull[0]) {
+                    continue;
+                }
+                HiveDecimalWritable value = vector[0];
+                for (int i = 0; i < n; i++) {
+                    int row = selectedInUse ? sel[i] : i;
+                    if (null == max[row] || value.compareTo(max[row]) > 0) {
+                        max[row] = value;
+                    }
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    int row = selectedInUse ? sel[i] : i;
+                    if ((noNulls || !isNull[row]) && (null == max[row] || vector[row].compareTo(max[row]) > 0)) {
+                        max[row] = vector[row];
+                    }
+                }
+            }
+        }
+
+        boolean[] outputIsNull = outputColVector.isNull;
+        outputColVector.noNulls = true;
+        for (int i = 0; i < n; i++) {
+            int row = selectedInUse ? sel[i] : i;
+            if (null == max[row]) {
+                outputIsNull[row] = true;
+                outputColVector.noNulls = false;
+            } else {
+                outputIsNull[row] = false;
+                outputColVector.set(row, max[row]);
+                if (outputIsNull[row]) {
+                    outputColVector.noNulls = false;
+                }
+            }
+        }
+        NullUtil.setNullDataEntriesDecimal(outputColVector, selectedInUse, sel, n);
+    }
+
+    @Override
+    public String vectorExpressionParameters() {
+        StringBuilder builder = new StringBuilder();
+        for (int j = 0; j < columns.length; j++) {
+            if (j > 0) {
+                builder.append(", ");
+            }
+            if (columns[j] >= 0) {
+                builder.append(getColumnParamString(j, columns[j]));
+            } else if (scalars[j] instanceof byte[]) {
+                builder.append("val ").append(displayUtf8Bytes((byte[]) scalars[j]));
+            } else {
+                builder.append("val ").append(scalars[j]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 按参数的列/常量组合生成描述，参数类型由GetMaxNumGenericUDF在初始化时检查，因此不限制类型
+     */
+    static VectorExpressionDescriptor.Descriptor descriptor(VectorExpressionDescriptor.InputExpressionType... types) {
+        VectorExpressionDescriptor.ArgumentType[] argumentTypes = new VectorExpressionDescriptor.ArgumentType[types.length];
+        for (int i = 0; i < types.length; i++) {
+            argumentTypes[i] = VectorExpressionDescriptor.ArgumentType.ALL_FAMILY;
+        }
+        return new VectorExpressionDescriptor.Builder()
+                .setMode(VectorExpressionDescriptor.Mode.PROJECTION)
+                .setNumArguments(types.length)
+                .setArgumentTypes(argumentTypes)
+                .setInputExpressionTypes(types).build();
+    }
+
+    private static final VectorExpressionDescriptor.InputExpressionType COLUMN =
+            VectorExpressionDescriptor.InputExpressionType.COLUMN;
+    private static final VectorExpressionDescriptor.InputExpressionType SCALAR =
+            VectorExpressionDescriptor.InputExpressionType.SCALAR;
+
+    public static class ColCol extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ColCol() {
+            super();
+        }
+
+        public ColCol(int colNum1, int colNum2, int outputColumnNum) {
+            super(new int[]{colNum1, colNum2}, new Object[2], outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(COLUMN, COLUMN);
+        }
+    }
+
+    public static class ColScalar extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ColScalar() {
+            super();
+        }
+
+        public ColScalar(int colNum1, Object value2, int outputColumnNum) {
+            super(new int[]{colNum1, -1}, new Object[]{null, value2}, outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(COLUMN, SCALAR);
+        }
+    }
+
+    public static class ScalarCol extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ScalarCol() {
+            super();
+        }
+
+        public ScalarCol(Object value1, int colNum2, int outputColumnNum) {
+            super(new int[]{-1, colNum2}, new Object[]{value1, null}, outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(SCALAR, COLUMN);
+        }
+    }
+
+    public static class ColColCol extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ColColCol() {
+            super();
+        }
+
+        public ColColCol(int colNum1, int colNum2, int colNum3, int outputColumnNum) {
+            super(new int[]{colNum1, colNum2, colNum3}, new Object[3], outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(COLUMN, COLUMN, COLUMN);
+        }
+    }
+
+    public static class ColColScalar extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ColColScalar() {
+            super();
+        }
+
+        public ColColScalar(int colNum1, int colNum2, Object value3, int outputColumnNum) {
+            super(new int[]{colNum1, colNum2, -1}, new Object[]{null, null, value3}, outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(COLUMN, COLUMN, SCALAR);
+        }
+    }
+
+    public static class ColScalarCol extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ColScalarCol() {
+            super();
+        }
+
+        public ColScalarCol(int colNum1, Object value2, int colNum3, int outputColumnNum) {
+            super(new int[]{colNum1, -1, colNum3}, new Object[]{null, value2, null}, outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(COLUMN, SCALAR, COLUMN);
+        }
+    }
+
+    public static class ScalarColCol extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ScalarColCol() {
+            super();
+        }
+
+        public ScalarColCol(Object value1, int colNum2, int colNum3, int outputColumnNum) {
+            super(new int[]{-1, colNum2, colNum3}, new Object[]{value1, null, null}, outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(SCALAR, COLUMN, COLUMN);
+        }
+    }
+
+    public static class ColScalarScalar extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ColScalarScalar() {
+            super();
+        }
+
+        public ColScalarScalar(int colNum1, Object value2, Object value3, int outputColumnNum) {
+            super(new int[]{colNum1, -1, -1}, new Object[]{null, value2, value3}, outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(COLUMN, SCALAR, SCALAR);
+        }
+    }
+
+    public static class ScalarColScalar extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ScalarColScalar() {
+            super();
+        }
+
+        public ScalarColScalar(Object value1, int colNum2, Object value3, int outputColumnNum) {
+            super(new int[]{-1, colNum2, -1}, new Object[]{value1, null, value3}, outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(SCALAR, COLUMN, SCALAR);
+        }
+    }
+
+    public static class ScalarScalarCol extends VectorUDFGetMaxNum {
+        private static final long serialVersionUID = 1L;
+
+        public ScalarScalarCol() {
+            super();
+        }
+
+        public ScalarScalarCol(Object value1, Object value2, int colNum3, int outputColumnNum) {
+            super(new int[]{-1, -1, colNum3}, new Object[]{value1, value2, null}, outputColumnNum);
+        }
+
+        @Override
+        public VectorExpressionDescriptor.Descriptor getDescriptor() {
+            return descriptor(SCALAR, SCALAR, COLUMN);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.sjj.hive.udtf;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.util.Collection;
+
+/**
+ * 以UTF-8字节存储的字符串集合，可直接判断字节数组的一段是否在集合中，查询时不创建任何对象
+ * 使用开放寻址的哈希表，适用于初始化后只读的小集合
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+final class ByteKeySet {
+    private final byte[][] table;
+    private final int mask;
+
+    /**
+     * @param keys 集合中的字符串，为空的元素会被忽略
+     */
+    ByteKeySet(Collection<String> keys) {
+        int capacity = Integer.highestOneBit(Math.max(keys.size(), 1) * 2 - 1) << 1;
+        table = new byte[capacity][];
+        mask = capacity - 1;
+        for (String key : keys) {
+            if (null != key) {
+                Text text = new Text(key);
+                add(text.copyBytes());
+            }
+        }
+    }
+
+    private void add(byte[] key) {
+        int slot = WritableComparator.hashBytes(key, 0, key.length) & mask;
+        while (null != table[slot]) {
+            if (equals(table[slot], key, 0, key.length)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+    }
+
+    /**
+     * 判断bytes中[start, end)的字节是否在集合中
+     *
+     * @param bytes
+     * @param start
+     * @param end
+     * @return
+     */
+    boolean contains(byte[] bytes, int start, int end) {
+        int length = end - start;
+        int slot = WritableComparator.hashBytes(bytes, start, length) & mask;
+        while (null != table[slot]) {
+            if (equals(table[slot], bytes, start, length)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private static boolean equals(byte[] key, byte[] bytes, int start, int length) {
+        return key.length == length
+                && WritableComparator.compareBytes(key, 0, length, bytes, start, length) == 0;
+    }
+}
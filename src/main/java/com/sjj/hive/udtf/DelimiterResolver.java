@@ -0,0 +1,396 @@
+package com.sjj.hive.udtf;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.io.Text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 根据分隔符及切分模式选择对应的切分器
+ * 分隔符为常量时，切分器在初始化阶段只创建一次；分隔符为非常量时，使用有界缓存保存已编译的正则表达式
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+final class DelimiterResolver {
+    /**
+     * 非常量分隔符时，缓存的已编译正则表达式的最大数量
+     */
+    static final int PATTERN_CACHE_SIZE = 32;
+
+    /**
+     * 切分模式
+     */
+    enum Mode {
+        /**
+         * 分隔符按正则表达式处理，与String.split的语义一致；分隔符中不含正则元字符时自动按字面量切分
+         */
+        REGEX,
+        /**
+         * 分隔符按字面量处理，不进行正则解析
+         */
+        LITERAL;
+
+        static Mode of(String name) throws UDFArgumentException {
+            if (null == name) {
+                return REGEX;
+            }
+            switch (name.trim().toLowerCase()) {
+                case "regex":
+                    return REGEX;
+                case "literal":
+                    return LITERAL;
+                default:
+                    throw new UDFArgumentException(
+                            "The split mode must be 'regex' or 'literal', got " + name);
+            }
+        }
+    }
+
+    /**
+     * 正则表达式中的元字符
+     */
+    private static final String REGEX_META_CHARS = ".$|()[]{}^?*+\\";
+
+    private final Mode mode;
+    /**
+     * 常量分隔符对应的切分器，分隔符为非常量时为null
+     */
+    private final Tokenizer constantTokenizer;
+    /**
+     * 非常量分隔符对应的已编译正则表达式，按访问顺序淘汰
+     */
+    private final Map<Text, Tokenizer> patternCache;
+    private final LiteralTokenizer literalTokenizer = new LiteralTokenizer();
+
+    /**
+     * @param mode              切分模式
+     * @param constantDelimiter 常量分隔符，分隔符为非常量时为null
+     */
+    DelimiterResolver(Mode mode, String constantDelimiter) {
+        this.mode = mode;
+        if (null != constantDelimiter) {
+            constantTokenizer = newTokenizer(new Text(constantDelimiter));
+            patternCache = null;
+        } else {
+            constantTokenizer = null;
+            patternCache = new LinkedHashMap<Text, Tokenizer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Text, Tokenizer> eldest) {
+                    return size() > PATTERN_CACHE_SIZE;
+                }
+            };
+        }
+    }
+
+    /**
+     * @return 分隔符是否为常量
+     */
+    boolean isConstant() {
+        return null != constantTokenizer;
+    }
+
+    /**
+     * 获取分隔符对应的切分器
+     *
+     * @param delimiter 当前行的分隔符，分隔符为常量时忽略该参数
+     * @return
+     */
+    Tokenizer resolve(Text delimiter) {
+        if (null != constantTokenizer) {
+            return constantTokenizer;
+        }
+        if (isLiteral(delimiter)) {
+            literalTokenizer.setDelimiter(delimiter);
+            return literalTokenizer;
+        }
+        // Text按字节判断相等，缓存命中时无需解码分隔符
+        Tokenizer tokenizer = patternCache.get(delimiter);
+        if (null == tokenizer) {
+            tokenizer = new RegexTokenizer(Pattern.compile(delimiter.toString()));
+            patternCache.put(new Text(delimiter), tokenizer);
+        }
+        return tokenizer;
+    }
+
+    private Tokenizer newTokenizer(Text delimiter) {
+        if (isLiteral(delimiter)) {
+            LiteralTokenizer tokenizer = new LiteralTokenizer();
+            tokenizer.setDelimiter(delimiter);
+            return tokenizer;
+        }
+        return new RegexTokenizer(Pattern.compile(delimiter.toString()));
+    }
+
+    /**
+     * 判断分隔符能否按字面量切分
+     * 空分隔符在正则语义下会按字符切分，因此交由正则表达式处理
+     *
+     * @param delimiter
+     * @return
+     */
+    private boolean isLiteral(Text delimiter) {
+        if (delimiter.getLength() == 0) {
+            return false;
+        }
+        if (mode == Mode.LITERAL) {
+            return true;
+        }
+        // 正则元字符均为ASCII字符，直接按字节判断
+        byte[] bytes = delimiter.getBytes();
+        for (int i = 0; i < delimiter.getLength(); i++) {
+            if (bytes[i] >= 0 && REGEX_META_CHARS.indexOf(bytes[i]) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在[from, to)范围内查找分隔符第一次出现的位置
+     *
+     * @return 分隔符的起始位置，未找到时返回-1
+     */
+    static int indexOf(byte[] bytes, int from, int to, byte[] delimiter, int delimiterLength) {
+        byte head = delimiter[0];
+        int last = to - delimiterLength;
+        for (int i = from; i <= last; i++) {
+            if (bytes[i] == head && matches(bytes, i, to, delimiter, delimiterLength)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 判断pos位置开始的字节是否与分隔符相同
+     */
+    static boolean matches(byte[] bytes, int pos, int to, byte[] delimiter, int delimiterLength) {
+        if (pos + delimiterLength > to) {
+            return false;
+        }
+        for (int j = 0; j < delimiterLength; j++) {
+            if (bytes[pos + j] != delimiter[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 切分器，按游标方式逐个返回切分结果，语义与String.split一致，即末尾的空字符串会被丢弃
+     */
+    abstract static class Tokenizer {
+        /**
+         * 开始切分新的一行数据
+         *
+         * @param data
+         */
+        abstract void reset(Text data);
+
+        /**
+         * 移动到下一个切分结果
+         *
+         * @return 是否还有切分结果
+         */
+        abstract boolean next();
+
+        /**
+         * 将当前切分结果写入out
+         *
+         * @param out
+         */
+        abstract void current(Text out);
+    }
+
+    /**
+     * 按字面量直接在UTF-8字节上切分，不经过正则引擎，也不解码为String
+     * UTF-8编码具有自同步性，按字节匹配分隔符不会匹配到多字节字符的中间
+     */
+    static final class LiteralTokenizer extends Tokenizer {
+        private byte[] delimiter = new byte[8];
+        private int delimiterLength;
+
+        private byte[] bytes;
+        private int end;
+        private int pos;
+        private int tokenStart;
+        private int tokenEnd;
+        private boolean first;
+        private boolean done;
+        /**
+         * 已确认的下一个非空切分结果的起始位置，避免连续的空切分结果重复向后查找
+         */
+        private int nonEmptyFrom;
+
+        void setDelimiter(Text delimiter) {
+            delimiterLength = delimiter.getLength();
+            if (this.delimiter.length < delimiterLength) {
+                this.delimiter = new byte[delimiterLength];
+            }
+            System.arraycopy(delimiter.getBytes(), 0, this.delimiter, 0, delimiterLength);
+        }
+
+        @Override
+        void reset(Text data) {
+            bytes = data.getBytes();
+            end = data.getLength();
+            pos = 0;
+            first = true;
+            done = false;
+            nonEmptyFrom = -1;
+        }
+
+        @Override
+        boolean next() {
+            if (done) {
+                return false;
+            }
+            int index = indexOf(bytes, pos, end, delimiter, delimiterLength);
+            if (index < 0) {
+                done = true;
+                // 未找到分隔符时返回整个输入；否则丢弃末尾的空字符串
+                if (!first && pos == end) {
+                    return false;
+                }
+                tokenStart = pos;
+                tokenEnd = end;
+                return true;
+            }
+            first = false;
+            tokenStart = pos;
+            tokenEnd = index;
+            pos = index + delimiterLength;
+            if (tokenStart == tokenEnd && pos > nonEmptyFrom) {
+                // 空切分结果之后若只剩分隔符，则与末尾的空字符串一同丢弃
+                int p = pos;
+                while (matches(bytes, p, end, delimiter, delimiterLength)) {
+                    p += delimiterLength;
+                }
+                if (p == end) {
+                    done = true;
+                    return false;
+                }
+                nonEmptyFrom = p;
+            }
+            return true;
+        }
+
+        @Override
+        void current(Text out) {
+            out.set(bytes, tokenStart, tokenEnd - tokenStart);
+        }
+
+        /**
+         * 当前切分结果所在的字节数组，位置为[tokenStart(), tokenEnd())
+         */
+        byte[] bytes() {
+            return bytes;
+        }
+
+        int tokenStart() {
+            return tokenStart;
+        }
+
+        int tokenEnd() {
+            return tokenEnd;
+        }
+    }
+
+    /**
+     * 使用已编译的正则表达式切分，逻辑与Pattern.split一致
+     */
+    private static final class RegexTokenizer extends Tokenizer {
+        private final Matcher matcher;
+        private String data;
+        private int index;
+        private int tokenStart;
+        private int tokenEnd;
+        private boolean matched;
+        private boolean done;
+        /**
+         * 尚未返回的空切分结果数量，只有其后存在非空切分结果时才返回
+         */
+        private int pendingEmpty;
+        private boolean hasPending;
+        private int pendingStart;
+        private int pendingEnd;
+
+        private RegexTokenizer(Pattern pattern) {
+            this.matcher = pattern.matcher("");
+        }
+
+        @Override
+        void reset(Text data) {
+            this.data = data.toString();
+            matcher.reset(this.data);
+            index = 0;
+            matched = false;
+            done = false;
+            pendingEmpty = 0;
+            hasPending = false;
+        }
+
+        @Override
+        boolean next() {
+            if (pendingEmpty > 0) {
+                pendingEmpty--;
+                tokenStart = tokenEnd = 0;
+                return true;
+            }
+            if (hasPending) {
+                hasPending = false;
+                tokenStart = pendingStart;
+                tokenEnd = pendingEnd;
+                return true;
+            }
+            while (!done) {
+                int start = index;
+                int stop;
+                if (matcher.find()) {
+                    // 与Pattern.split一致，忽略输入开头的零宽匹配
+                    if (!matched && matcher.start() == 0 && matcher.end() == 0) {
+                        continue;
+                    }
+                    matched = true;
+                    stop = matcher.start();
+                    index = matcher.end();
+                } else {
+                    done = true;
+                    if (!matched) {
+                        tokenStart = 0;
+                        tokenEnd = data.length();
+                        return true;
+                    }
+                    stop = data.length();
+                }
+                if (start < stop) {
+                    if (pendingEmpty > 0) {
+                        hasPending = true;
+                        pendingStart = start;
+                        pendingEnd = stop;
+                        pendingEmpty--;
+                        tokenStart = tokenEnd = 0;
+                        return true;
+                    }
+                    tokenStart = start;
+                    tokenEnd = stop;
+                    return true;
+                }
+                pendingEmpty++;
+            }
+            // 末尾的空字符串被丢弃
+            pendingEmpty = 0;
+            return false;
+        }
+
+        @Override
+        void current(Text out) {
+            out.set(data.substring(tokenStart, tokenEnd));
+        }
+    }
+}
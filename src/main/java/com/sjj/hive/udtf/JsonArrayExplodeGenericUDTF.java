@@ -0,0 +1,137 @@
+package com.sjj.hive.udtf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+
+import static org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory.STRING;
+
+/**
+ * 展开字符串中的JSON数组，每个元素输出一行
+ * 直接在UTF-8字节上流式扫描，不解析为DOM，找到一个元素就立即输出，每行的内存占用与JSON的大小无关
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "json_array_explode_udtf",
+        value = "_FUNC_(json[,path]) - Explodes the json array at path (default '$') and returns one row per element, "
+                + "path supports .name, ['name'], [*] and [n], string elements are unquoted, "
+                + "objects and arrays are returned as json text",
+        extended = "Example:\n"
+                + "  > SELECT name, item FROM table LATERAL VIEW _FUNC_(data) temp_table AS item;\n"
+                + "  > SELECT name, id FROM table LATERAL VIEW _FUNC_(data,'$.items[*].id') temp_table AS id;"
+)
+@SuppressWarnings("deprecation")
+public class JsonArrayExplodeGenericUDTF extends GenericUDTF {
+    /**
+     * 输入参数对象检查器
+     */
+    private transient StringObjectInspector inputOI;
+
+    /**
+     * 函数返回的结果
+     */
+    private transient Object forwardObj[] = new Object[1];
+
+    /**
+     * 复用的输出对象
+     */
+    private transient Text outText = new Text();
+
+    private transient JsonPathScanner scanner;
+
+    /**
+     * 初始化
+     *
+     * @param argOIs
+     * @return
+     * @throws UDFArgumentException
+     */
+    @Override
+    public StructObjectInspector initialize(ObjectInspector[] argOIs) throws UDFArgumentException {
+        if (argOIs.length != 1 && argOIs.length != 2) {
+            throw new UDFArgumentException("The json_array_explode_udtf takes one or two arguments.");
+        }
+        for (ObjectInspector argOI : argOIs) {
+            if (!argOI.getCategory().equals(ObjectInspector.Category.PRIMITIVE)
+                    || !((PrimitiveObjectInspector) argOI).getPrimitiveCategory().equals(STRING)) {
+                throw new UDFArgumentException(
+                        "The json_array_explode_udtf takes only string types, got " + argOI.getTypeName());
+            }
+        }
+        inputOI = (StringObjectInspector) argOIs[0];
+        // 路径必须为常量，在初始化阶段解析
+        String path = "$";
+        if (argOIs.length == 2) {
+            if (!(argOIs[1] instanceof ConstantObjectInspector)) {
+                throw new UDFArgumentException("The path of json_array_explode_udtf must be a constant.");
+            }
+            path = SplitExplodeGenericUDTF.getConstantString(argOIs[1]);
+        }
+        scanner = new JsonPathScanner(path) {
+            @Override
+            void onValue(int type, int start, int end) throws HiveException {
+                forwardValue(type, start, end);
+            }
+        };
+
+        ArrayList<String> fname = new ArrayList<>();
+        ArrayList<ObjectInspector> foi = new ArrayList<>();
+        fname.add("col");
+        foi.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+        // 函数出参类型
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+    }
+
+    /**
+     * 实现具体的处理逻辑
+     * JSON格式错误时在出错的位置停止，之前已经输出的元素不受影响
+     *
+     * @param args
+     * @throws HiveException
+     */
+    @Override
+    public void process(Object[] args) throws HiveException {
+        if (null != args[0]) {
+            Text json = inputOI.getPrimitiveWritableObject(args[0]);
+            scanner.scan(json.getBytes(), 0, json.getLength());
+        }
+    }
+
+    /**
+     * 输出找到的元素，字符串去掉引号并解码转义字符，null输出为NULL，其余类型输出原始的JSON文本
+     */
+    private void forwardValue(int type, int start, int end) throws HiveException {
+        if (type == JsonPathScanner.NULL) {
+            forwardObj[0] = null;
+        } else if (type == JsonPathScanner.STRING) {
+            if (!scanner.stringValue(start, end, outText)) {
+                return;
+            }
+            forwardObj[0] = outText;
+        } else {
+            outText.set(scanner.bytes(), start, end - start);
+            forwardObj[0] = outText;
+        }
+        // 输出计算结果
+        forward(forwardObj);
+    }
+
+    /**
+     * 计算结束后调用该方法
+     *
+     * @throws HiveException
+     */
+    @Override
+    public void close() throws HiveException {
+    }
+}
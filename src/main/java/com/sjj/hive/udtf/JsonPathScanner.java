@@ -0,0 +1,507 @@
+package com.sjj.hive.udtf;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 直接在UTF-8字节上流式扫描JSON，不构建DOM，按路径找到的每个值都会立即通过onValue回调输出
+ * 扫描过程只记录位置，不保存已扫描的内容，不在路径上的对象及数组按括号直接跳过，内存占用与JSON的大小及嵌套深度均无关
+ * <p>
+ * 支持的路径语法：以$开头，后接任意个.name、['name']、[*]或[n]
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+abstract class JsonPathScanner {
+    /**
+     * JSON值的类型
+     */
+    static final int STRING = 1;
+    static final int NUMBER = 2;
+    static final int BOOLEAN = 3;
+    static final int NULL = 4;
+    static final int OBJECT = 5;
+    static final int ARRAY = 6;
+
+    /**
+     * 路径中的一段，name不为null时匹配对象的字段，否则匹配数组的下标，index小于0表示匹配所有下标
+     */
+    private static final class Segment {
+        private final byte[] name;
+        private final int index;
+
+        private Segment(byte[] name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+    }
+
+    private final Segment[] segments;
+
+    private byte[] bytes;
+    private int end;
+    /**
+     * 字符串包含转义字符时，用于存放解码后的字节
+     */
+    private byte[] scratch = new byte[64];
+
+    /**
+     * @param path 路径，不包含[*]或[n]时会自动在末尾追加[*]，即展开路径对应的数组
+     * @throws UDFArgumentException
+     */
+    JsonPathScanner(String path) throws UDFArgumentException {
+        List<Segment> list = parsePath(path);
+        boolean hasArraySegment = false;
+        for (Segment segment : list) {
+            hasArraySegment |= null == segment.name;
+        }
+        if (!hasArraySegment) {
+            list.add(new Segment(null, -1));
+        }
+        segments = list.toArray(new Segment[0]);
+    }
+
+    private static List<Segment> parsePath(String path) throws UDFArgumentException {
+        if (null == path || !path.startsWith("$")) {
+            throw new UDFArgumentException("The json path must start with '$', got " + path);
+        }
+        List<Segment> list = new ArrayList<>();
+        int i = 1;
+        int n = path.length();
+        while (i < n) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                int j = i + 1;
+                while (j < n && path.charAt(j) != '.' && path.charAt(j) != '[') {
+                    j++;
+                }
+                if (j == i + 1) {
+                    throw new UDFArgumentException("Empty field name in json path " + path);
+                }
+                list.add(new Segment(new Text(path.substring(i + 1, j)).copyBytes(), -1));
+                i = j;
+            } else if (c == '[') {
+                int j = path.indexOf(']', i);
+                if (j < 0) {
+                    throw new UDFArgumentException("Unclosed '[' in json path " + path);
+                }
+                String inner = path.substring(i + 1, j).trim();
+                if ("*".equals(inner)) {
+                    list.add(new Segment(null, -1));
+                } else if (inner.length() >= 2 && (inner.charAt(0) == '\'' || inner.charAt(0) == '"')
+                        && inner.charAt(inner.length() - 1) == inner.charAt(0)) {
+                    list.add(new Segment(new Text(inner.substring(1, inner.length() - 1)).copyBytes(), -1));
+                } else {
+                    try {
+                        int index = Integer.parseInt(inner);
+                        if (index < 0) {
+                            throw new NumberFormatException();
+                        }
+                        list.add(new Segment(null, index));
+                    } catch (NumberFormatException e) {
+                        throw new UDFArgumentException("Invalid array index '" + inner + "' in json path " + path);
+                    }
+                }
+                i = j + 1;
+            } else {
+                throw new UDFArgumentException("Unexpected character '" + c + "' in json path " + path);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 找到路径对应的值时调用
+     *
+     * @param type  值的类型
+     * @param start 值在bytes中的起始位置，字符串包含引号
+     * @param end   值在bytes中的结束位置
+     * @throws HiveException
+     */
+    abstract void onValue(int type, int start, int end) throws HiveException;
+
+    /**
+     * 扫描bytes中[start, end)范围内的JSON
+     *
+     * @return JSON格式是否正确，格式错误时在出错的位置停止扫描
+     * @throws HiveException
+     */
+    boolean scan(byte[] bytes, int start, int end) throws HiveException {
+        this.bytes = bytes;
+        this.end = end;
+        int p = value(skipWhitespace(start), 0);
+        return p >= 0 && skipWhitespace(p) == end;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * 将字符串的内容写入out，不包含转义字符时直接引用原始字节
+     *
+     * @param start 字符串的起始位置，包含引号
+     * @param end   字符串的结束位置，包含引号
+     * @param out
+     * @return 转义字符是否合法
+     */
+    boolean stringValue(int start, int end, Text out) {
+        if (indexOfBackslash(start + 1, end - 1) < 0) {
+            out.set(bytes, start + 1, end - start - 2);
+            return true;
+        }
+        int length = unescape(start + 1, end - 1);
+        if (length < 0) {
+            return false;
+        }
+        out.set(scratch, 0, length);
+        return true;
+    }
+
+    /**
+     * 扫描一个值，匹配到路径的最后一段时输出该值
+     *
+     * @return 值之后的位置，格式错误时返回-1
+     */
+    private int value(int p, int depth) throws HiveException {
+        if (p >= end) {
+            return -1;
+        }
+        if (depth == segments.length) {
+            int q = skipValue(p);
+            if (q >= 0) {
+                onValue(typeOf(bytes[p]), p, q);
+            }
+            return q;
+        }
+        Segment segment = segments[depth];
+        if (bytes[p] == '{' && null != segment.name) {
+            return object(p, depth, segment);
+        }
+        if (bytes[p] == '[' && null == segment.name) {
+            return array(p, depth, segment);
+        }
+        // 类型与路径不匹配时直接跳过
+        return skipValue(p);
+    }
+
+    private int object(int p, int depth, Segment segment) throws HiveException {
+        p = skipWhitespace(p + 1);
+        if (p < end && bytes[p] == '}') {
+            return p + 1;
+        }
+        while (p < end && bytes[p] == '"') {
+            int keyEnd = skipString(p);
+            if (keyEnd < 0) {
+                return -1;
+            }
+            boolean matched = keyEquals(p + 1, keyEnd - 1, segment.name);
+            p = skipWhitespace(keyEnd);
+            if (p >= end || bytes[p] != ':') {
+                return -1;
+            }
+            p = skipWhitespace(p + 1);
+            p = matched ? value(p, depth + 1) : skipValue(p);
+            if (p < 0) {
+                return -1;
+            }
+            p = skipWhitespace(p);
+            if (p < end && bytes[p] == ',') {
+                p = skipWhitespace(p + 1);
+            } else if (p < end && bytes[p] == '}') {
+                return p + 1;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private int array(int p, int depth, Segment segment) throws HiveException {
+        p = skipWhitespace(p + 1);
+        if (p < end && bytes[p] == ']') {
+            return p + 1;
+        }
+        int index = 0;
+        while (p < end) {
+            p = segment.index < 0 || segment.index == index ? value(p, depth + 1) : skipValue(p);
+            if (p < 0) {
+                return -1;
+            }
+            p = skipWhitespace(p);
+            if (p < end && bytes[p] == ',') {
+                p = skipWhitespace(p + 1);
+                index++;
+            } else if (p < end && bytes[p] == ']') {
+                return p + 1;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 跳过一个值
+     *
+     * @return 值之后的位置，格式错误时返回-1
+     */
+    private int skipValue(int p) {
+        if (p >= end) {
+            return -1;
+        }
+        switch (bytes[p]) {
+            case '"':
+                return skipString(p);
+            case '{':
+                return skipContainer(p);
+            case '[':
+                return skipContainer(p);
+            case 't':
+                return skipLiteral(p, "true");
+            case 'f':
+                return skipLiteral(p, "false");
+            case 'n':
+                return skipLiteral(p, "null");
+            default:
+                return skipNumber(p);
+        }
+    }
+
+    /**
+     * 跳过一个对象或数组，只需匹配括号并跳过其中的字符串
+     */
+    private int skipContainer(int p) {
+        int level = 0;
+        while (p < end) {
+            byte c = bytes[p];
+            if (c == '"') {
+                p = skipString(p);
+                if (p < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                level++;
+            } else if (c == '}' || c == ']') {
+                level--;
+                if (level == 0) {
+                    return p + 1;
+                }
+            }
+            p++;
+        }
+        return -1;
+    }
+
+    private int skipString(int p) {
+        for (int i = p + 1; i < end; i++) {
+            if (bytes[i] == '\\') {
+                i++;
+            } else if (bytes[i] == '"') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private int skipLiteral(int p, String literal) {
+        if (p + literal.length() > end) {
+            return -1;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (bytes[p + i] != literal.charAt(i)) {
+                return -1;
+            }
+        }
+        return p + literal.length();
+    }
+
+    private int skipNumber(int p) {
+        int i = p;
+        while (i < end) {
+            byte c = bytes[i];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i == p ? -1 : i;
+    }
+
+    private int skipWhitespace(int p) {
+        while (p < end && (bytes[p] == ' ' || bytes[p] == '\n' || bytes[p] == '\r' || bytes[p] == '\t')) {
+            p++;
+        }
+        return p;
+    }
+
+    private static int typeOf(byte c) {
+        switch (c) {
+            case '"':
+                return STRING;
+            case '{':
+                return OBJECT;
+            case '[':
+                return ARRAY;
+            case 't':
+            case 'f':
+                return BOOLEAN;
+            case 'n':
+                return NULL;
+            default:
+                return NUMBER;
+        }
+    }
+
+    private int indexOfBackslash(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '\\') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 判断字段名是否与路径中的字段名相同，不包含转义字符时直接比较字节
+     */
+    private boolean keyEquals(int start, int end, byte[] name) {
+        int length;
+        byte[] key;
+        int offset;
+        if (indexOfBackslash(start, end) < 0) {
+            key = bytes;
+            offset = start;
+            length = end - start;
+        } else {
+            length = unescape(start, end);
+            key = scratch;
+            offset = 0;
+        }
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[offset + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将字符串中的转义字符解码后写入scratch
+     *
+     * @return 解码后的长度，转义字符不合法时返回-1
+     */
+    private int unescape(int start, int end) {
+        ensureScratch(end - start);
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            byte c = bytes[i];
+            if (c != '\\') {
+                scratch[n++] = c;
+                continue;
+            }
+            if (++i >= end) {
+                return -1;
+            }
+            switch (bytes[i]) {
+                case '"':
+                case '\\':
+                case '/':
+                    scratch[n++] = bytes[i];
+                    break;
+                case 'b':
+                    scratch[n++] = '\b';
+                    break;
+                case 'f':
+                    scratch[n++] = '\f';
+                    break;
+                case 'n':
+                    scratch[n++] = '\n';
+                    break;
+                case 'r':
+                    scratch[n++] = '\r';
+                    break;
+                case 't':
+                    scratch[n++] = '\t';
+                    break;
+                case 'u':
+                    int codePoint = hex4(i + 1, end);
+                    if (codePoint < 0) {
+                        return -1;
+                    }
+                    i += 4;
+                    if (Character.isHighSurrogate((char) codePoint) && i + 6 < end
+                            && bytes[i + 1] == '\\' && bytes[i + 2] == 'u') {
+                        int low = hex4(i + 3, end);
+                        if (low >= 0 && Character.isLowSurrogate((char) low)) {
+                            codePoint = Character.toCodePoint((char) codePoint, (char) low);
+                            i += 6;
+                        }
+                    }
+                    if (Character.isSurrogate((char) codePoint) && codePoint <= 0xFFFF) {
+                        // 不成对的代理字符替换为U+FFFD
+                        codePoint = 0xFFFD;
+                    }
+                    n = writeUtf8(codePoint, n);
+                    break;
+                default:
+                    return -1;
+            }
+        }
+        return n;
+    }
+
+    private int hex4(int p, int end) {
+        if (p + 4 > end) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = p; i < p + 4; i++) {
+            int digit = Character.digit(bytes[i], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * 将码点按UTF-8编码写入scratch，转义序列的长度不小于编码后的长度，因此scratch的容量足够
+     */
+    private int writeUtf8(int codePoint, int n) {
+        if (codePoint < 0x80) {
+            scratch[n++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            scratch[n++] = (byte) (0xC0 | (codePoint >> 6));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            scratch[n++] = (byte) (0xE0 | (codePoint >> 12));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            scratch[n++] = (byte) (0xF0 | (codePoint >> 18));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return n;
+    }
+
+    private void ensureScratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.sjj.hive.udtf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+
+import static org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory.STRING;
+
+/**
+ * 带位置的split_explode_udtf，输出(pos, col)，可通过limit及offset只保留部分切分结果
+ * 达到limit后立即停止扫描，不会切分整个字符串
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "pos_split_explode_udtf",
+        value = "_FUNC_(data,delimiter[,limit[,offset]]) - Splits data around delimiter and returns (pos, col) rows, "
+                + "skipping the first offset elements and returning at most limit rows",
+        extended = "Example:\n"
+                + "  > SELECT name, pos, str FROM table LATERAL VIEW _FUNC_(data,';') temp_table AS pos, str;\n"
+                + "  > SELECT name, pos, str FROM table LATERAL VIEW _FUNC_(data,';',3) temp_table AS pos, str;\n"
+                + "  > SELECT name, pos, str FROM table LATERAL VIEW _FUNC_(data,';',3,2) temp_table AS pos, str;"
+)
+@SuppressWarnings("deprecation")
+public class PosSplitExplodeGenericUDTF extends GenericUDTF {
+    /**
+     * 输入参数对象检查器
+     */
+    private transient PrimitiveObjectInspector[] inputOIs;
+
+    /**
+     * 函数返回的结果
+     */
+    private transient Object forwardObj[] = new Object[2];
+
+    /**
+     * 复用的输出对象
+     */
+    private transient IntWritable outPos = new IntWritable();
+    private transient Text outText = new Text();
+
+    /**
+     * 根据分隔符选择切分器，常量分隔符只解析一次
+     */
+    private transient DelimiterResolver delimiterResolver;
+
+    /**
+     * 初始化
+     *
+     * @param argOIs
+     * @return
+     * @throws UDFArgumentException
+     */
+    @Override
+    public StructObjectInspector initialize(ObjectInspector[] argOIs) throws UDFArgumentException {
+        if (argOIs.length < 2 || argOIs.length > 4) {
+            throw new UDFArgumentException("The pos_split_explode_udtf takes two to four arguments.");
+        }
+        inputOIs = new PrimitiveObjectInspector[argOIs.length];
+        for (int i = 0; i < argOIs.length; i++) {
+            if (!argOIs[i].getCategory().equals(ObjectInspector.Category.PRIMITIVE)) {
+                throw new UDFArgumentException(
+                        "The pos_split_explode_udtf takes only primitive types, got " + argOIs[i].getTypeName());
+            }
+            inputOIs[i] = (PrimitiveObjectInspector) argOIs[i];
+            if (i < 2) {
+                if (!inputOIs[i].getPrimitiveCategory().equals(STRING)) {
+                    throw new UDFArgumentException(
+                            "The data and delimiter of pos_split_explode_udtf must be string types, got "
+                                    + argOIs[i].getTypeName());
+                }
+            } else {
+                switch (inputOIs[i].getPrimitiveCategory()) {
+                    case BYTE:
+                    case SHORT:
+                    case INT:
+                    case LONG:
+                    case VOID:
+                        break;
+                    default:
+                        throw new UDFArgumentException(
+                                "The limit and offset of pos_split_explode_udtf must be integer types, got "
+                                        + argOIs[i].getTypeName());
+                }
+            }
+        }
+        // 分隔符为常量时，在初始化阶段确定切分器
+        String constantDelimiter = null;
+        if (argOIs[1] instanceof ConstantObjectInspector) {
+            constantDelimiter = SplitExplodeGenericUDTF.getConstantString(argOIs[1]);
+        }
+        delimiterResolver = new DelimiterResolver(DelimiterResolver.Mode.REGEX, constantDelimiter);
+        ArrayList<String> fname = new ArrayList<>();
+        ArrayList<ObjectInspector> foi = new ArrayList<>();
+        fname.add("pos");
+        fname.add("col");
+        foi.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+        // 函数出参类型
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+    }
+
+    /**
+     * 实现具体的处理逻辑
+     *
+     * @param args
+     * @throws HiveException
+     */
+    @Override
+    public void process(Object[] args) throws HiveException {
+        Object data = args[0];
+        Object delimiter = args[1];
+        if (null == data || null == delimiter) {
+            return;
+        }
+        // limit为空或小于0时不限制输出行数，offset为空或小于0时从第一个切分结果开始
+        int limit = getInt(args, 2, -1);
+        int offset = Math.max(getInt(args, 3, 0), 0);
+        if (limit == 0) {
+            return;
+        }
+
+        Text dataText = ((StringObjectInspector) inputOIs[0]).getPrimitiveWritableObject(data);
+        Text delimiterText = delimiterResolver.isConstant()
+                ? null : ((StringObjectInspector) inputOIs[1]).getPrimitiveWritableObject(delimiter);
+        DelimiterResolver.Tokenizer tokenizer = delimiterResolver.resolve(delimiterText);
+        tokenizer.reset(dataText);
+        forwardObj[0] = outPos;
+        forwardObj[1] = outText;
+        int pos = 0;
+        int emitted = 0;
+        while (tokenizer.next()) {
+            if (pos >= offset) {
+                outPos.set(pos);
+                tokenizer.current(outText);
+                // 输出计算结果
+                forward(forwardObj);
+                // 达到limit后不再继续扫描
+                if (++emitted == limit) {
+                    break;
+                }
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * 获取可选的整数参数
+     *
+     * @param args
+     * @param i
+     * @param defaultValue 参数不存在或为空时的默认值
+     * @return
+     */
+    private int getInt(Object[] args, int i, int defaultValue) {
+        if (args.length <= i || null == args[i]) {
+            return defaultValue;
+        }
+        return PrimitiveObjectInspectorUtils.getInt(args[i], inputOIs[i]);
+    }
+
+    /**
+     * 计算结束后调用该方法
+     *
+     * @throws HiveException
+     */
+    @Override
+    public void close() throws HiveException {
+    }
+}
@@ -1,13 +1,16 @@
 package com.sjj.hive.udtf;
 
 import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.MapredContext;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
 import org.apache.hadoop.hive.serde2.objectinspector.*;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Reporter;
 
 import java.util.ArrayList;
 
@@ -20,12 +23,24 @@ import static org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspe
  */
 @Description(
         name = "split_explode_udtf",
-        value = "_FUNC_(data,delimiter)",
+        value = "_FUNC_(data,delimiter[,mode]) - Splits data around delimiter and returns one row per element, "
+                + "mode can be 'regex' (default) or 'literal'",
         extended = "Example:\n"
-                + "  > SELECT name, str FROM table LATERAL VIEW _FUNC_(data,delimiter) temp_table AS str;"
+                + "  > SELECT name, str FROM table LATERAL VIEW _FUNC_(data,delimiter) temp_table AS str;\n"
+                + "  > SELECT name, str FROM table LATERAL VIEW _FUNC_(data,'||','literal') temp_table AS str;"
 )
 @SuppressWarnings("deprecation")
 public class SplitExplodeGenericUDTF extends GenericUDTF {
+    /**
+     * 切分结果缓存的最大字节数，默认为0即不开启缓存
+     * 适用于同一个task中大量重复输入的场景，如：set split_explode_udtf.cache.max.bytes=67108864;
+     */
+    public static final String CACHE_MAX_BYTES = "split_explode_udtf.cache.max.bytes";
+    /**
+     * 缓存命中情况的计数器组
+     */
+    public static final String COUNTER_GROUP = "split_explode_udtf";
+
     /**
      * 输入参数对象检查器
      */
@@ -36,6 +51,36 @@ public class SplitExplodeGenericUDTF extends GenericUDTF {
      */
     private transient Object forwardObj[] = new Object[1];
 
+    /**
+     * 复用的输出对象，每个切分结果直接从输入字节中拷贝，不再逐个创建Text
+     */
+    private transient Text outText = new Text();
+
+    /**
+     * 根据分隔符选择切分器，常量分隔符只解析一次
+     */
+    private transient DelimiterResolver delimiterResolver;
+
+    /**
+     * 切分结果缓存，未开启时为null
+     */
+    private transient SplitResultCache cache;
+    private transient Reporter reporter;
+
+    /**
+     * 在task中执行时调用，读取任务配置
+     *
+     * @param mapredContext
+     */
+    @Override
+    public void configure(MapredContext mapredContext) {
+        long maxBytes = mapredContext.getJobConf().getLong(CACHE_MAX_BYTES, 0L);
+        if (maxBytes > 0) {
+            cache = new SplitResultCache(maxBytes);
+        }
+        reporter = mapredContext.getReporter();
+    }
+
     /**
      * 初始化
      *
@@ -45,8 +90,8 @@ public class SplitExplodeGenericUDTF extends GenericUDTF {
      */
     @Override
     public StructObjectInspector initialize(ObjectInspector[] argOIs) throws UDFArgumentException {
-        if (argOIs.length != 2) {
-            throw new UDFArgumentException("The split_explode_udtf takes only two arguments.");
+        if (argOIs.length != 2 && argOIs.length != 3) {
+            throw new UDFArgumentException("The split_explode_udtf takes two or three arguments.");
         } else {
             inputOIs = new PrimitiveObjectInspector[argOIs.length];
             for (int i = 0; i < argOIs.length; i++) {
@@ -57,6 +102,20 @@ public class SplitExplodeGenericUDTF extends GenericUDTF {
                 }
                 inputOIs[i] = (PrimitiveObjectInspector) argOIs[i];
             }
+            // 切分模式必须为常量
+            DelimiterResolver.Mode mode = DelimiterResolver.Mode.REGEX;
+            if (argOIs.length == 3) {
+                if (!(argOIs[2] instanceof ConstantObjectInspector)) {
+                    throw new UDFArgumentException("The third argument of split_explode_udtf must be a constant.");
+                }
+                mode = DelimiterResolver.Mode.of(getConstantString(argOIs[2]));
+            }
+            // 分隔符为常量时，在初始化阶段确定切分器
+            String constantDelimiter = null;
+            if (argOIs[1] instanceof ConstantObjectInspector) {
+                constantDelimiter = getConstantString(argOIs[1]);
+            }
+            delimiterResolver = new DelimiterResolver(mode, constantDelimiter);
             ArrayList<String> fname = new ArrayList<>();
             ArrayList<ObjectInspector> foi = new ArrayList<>();
             fname.add("col");
@@ -77,15 +136,60 @@ public class SplitExplodeGenericUDTF extends GenericUDTF {
         Object data = args[0];
         Object delimiter = args[1];
         if (null != data && null != delimiter) {
-            String dataStr = PrimitiveObjectInspectorUtils.getString(data, inputOIs[0]);
-            String delimiterStr = PrimitiveObjectInspectorUtils.getString(delimiter, inputOIs[1]);
-            String[] arr = dataStr.split(delimiterStr);
-            for (String s : arr) {
-                forwardObj[0] = new Text(s);
-                // 输出计算结果
+            // 直接获取UTF-8编码的Text，字面量分隔符在字节上切分，无需解码为String
+            Text dataText = ((StringObjectInspector) inputOIs[0]).getPrimitiveWritableObject(data);
+            Text delimiterText = delimiterResolver.isConstant()
+                    ? null : ((StringObjectInspector) inputOIs[1]).getPrimitiveWritableObject(delimiter);
+            forwardObj[0] = outText;
+            if (null == cache) {
+                DelimiterResolver.Tokenizer tokenizer = delimiterResolver.resolve(delimiterText);
+                tokenizer.reset(dataText);
+                while (tokenizer.next()) {
+                    tokenizer.current(outText);
+                    // 输出计算结果
+                    forward(forwardObj);
+                }
+            } else {
+                processWithCache(dataText, delimiterText);
+            }
+        }
+    }
+
+    /**
+     * 开启缓存时的处理逻辑，命中时直接重放缓存的切分结果
+     *
+     * @param dataText
+     * @param delimiterText
+     * @throws HiveException
+     */
+    private void processWithCache(Text dataText, Text delimiterText) throws HiveException {
+        SplitResultCache.Tokens tokens = cache.get(dataText, delimiterText);
+        if (null != tokens) {
+            for (int i = 0; i < tokens.size(); i++) {
+                tokens.get(i, outText);
                 forward(forwardObj);
             }
+            return;
+        }
+        DelimiterResolver.Tokenizer tokenizer = delimiterResolver.resolve(delimiterText);
+        tokenizer.reset(dataText);
+        while (tokenizer.next()) {
+            tokenizer.current(outText);
+            cache.append(outText);
+            forward(forwardObj);
         }
+        cache.commit();
+    }
+
+    /**
+     * 获取常量参数的字符串值
+     *
+     * @param oi
+     * @return
+     */
+    static String getConstantString(ObjectInspector oi) {
+        Object value = ((ConstantObjectInspector) oi).getWritableConstantValue();
+        return null == value ? null : PrimitiveObjectInspectorUtils.getString(value, (PrimitiveObjectInspector) oi);
     }
 
     /**
@@ -95,5 +199,11 @@ public class SplitExplodeGenericUDTF extends GenericUDTF {
      */
     @Override
     public void close() throws HiveException {
+        // 通过计数器输出缓存命中情况，用于判断缓存是否有收益
+        if (null != cache && null != reporter) {
+            reporter.incrCounter(COUNTER_GROUP, "CACHE_HITS", cache.getHits());
+            reporter.incrCounter(COUNTER_GROUP, "CACHE_MISSES", cache.getMisses());
+            reporter.incrCounter(COUNTER_GROUP, "CACHE_EVICTIONS", cache.getEvictions());
+        }
     }
 }
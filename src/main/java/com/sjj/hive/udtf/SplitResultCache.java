@@ -0,0 +1,217 @@
+package com.sjj.hive.udtf;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按字节数限制大小的LRU缓存，以输入数据及分隔符的字节为key，保存已经编码好的切分结果
+ * 同一个task中重复出现的输入可以直接重放切分结果，不需要重新切分
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+final class SplitResultCache {
+    /**
+     * 每个缓存项除key及切分结果之外的估算开销，包括对象头、引用及哈希表节点
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private final LinkedHashMap<Key, Tokens> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 用于查询的key，复用同一个对象，查询时不拷贝输入数据
+     */
+    private final Key probe = new Key();
+
+    /**
+     * 缓存未命中时，切分结果先写入这里，切分结束后再拷贝为缓存项
+     */
+    private byte[] pendingBytes = new byte[256];
+    private int pendingLength;
+    private int[] pendingEnds = new int[16];
+    private int pendingCount;
+
+    /**
+     * @param maxBytes 缓存占用的最大字节数
+     */
+    SplitResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 查询缓存中的切分结果
+     *
+     * @param data      输入数据
+     * @param delimiter 分隔符，分隔符为常量时可以为null
+     * @return 命中时返回切分结果，否则返回null
+     */
+    Tokens get(Text data, Text delimiter) {
+        probe.set(data, delimiter);
+        Tokens tokens = entries.get(probe);
+        if (null == tokens) {
+            misses++;
+            pendingLength = 0;
+            pendingCount = 0;
+        } else {
+            hits++;
+        }
+        return tokens;
+    }
+
+    /**
+     * 缓存未命中时，记录一个切分结果
+     *
+     * @param token
+     */
+    void append(Text token) {
+        int length = token.getLength();
+        if (pendingLength + length > pendingBytes.length) {
+            pendingBytes = Arrays.copyOf(pendingBytes, Math.max(pendingBytes.length * 2, pendingLength + length));
+        }
+        System.arraycopy(token.getBytes(), 0, pendingBytes, pendingLength, length);
+        pendingLength += length;
+        if (pendingCount == pendingEnds.length) {
+            pendingEnds = Arrays.copyOf(pendingEnds, pendingEnds.length * 2);
+        }
+        pendingEnds[pendingCount++] = pendingLength;
+    }
+
+    /**
+     * 缓存未命中且切分结束后，将记录的切分结果放入缓存，必须紧跟在对应的get之后调用
+     */
+    void commit() {
+        long size = ENTRY_OVERHEAD + probe.length + pendingLength + 4L * pendingCount;
+        // 超过缓存上限的单个结果不缓存
+        if (size > maxBytes) {
+            return;
+        }
+        Key key = probe.copy();
+        Tokens tokens = new Tokens(Arrays.copyOf(pendingBytes, pendingLength), Arrays.copyOf(pendingEnds, pendingCount));
+        entries.put(key, tokens);
+        usedBytes += size;
+        Iterator<Map.Entry<Key, Tokens>> it = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, Tokens> eldest = it.next();
+            usedBytes -= ENTRY_OVERHEAD + eldest.getKey().length
+                    + eldest.getValue().bytes.length + 4L * eldest.getValue().ends.length;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * 缓存的key，由输入数据及分隔符的字节组成
+     */
+    private static final class Key {
+        private byte[] dataBytes;
+        private int dataLength;
+        private byte[] delimiterBytes;
+        private int delimiterLength;
+        private int length;
+        private int hash;
+
+        void set(Text data, Text delimiter) {
+            dataBytes = data.getBytes();
+            dataLength = data.getLength();
+            if (null == delimiter) {
+                delimiterBytes = null;
+                delimiterLength = 0;
+            } else {
+                delimiterBytes = delimiter.getBytes();
+                delimiterLength = delimiter.getLength();
+            }
+            length = dataLength + delimiterLength;
+            hash = WritableComparator.hashBytes(dataBytes, dataLength) * 31 + delimiterLength;
+            if (delimiterLength > 0) {
+                hash = hash * 31 + WritableComparator.hashBytes(delimiterBytes, delimiterLength);
+            }
+        }
+
+        /**
+         * 拷贝当前引用的字节，生成可以放入缓存的key
+         */
+        Key copy() {
+            Key key = new Key();
+            key.dataBytes = Arrays.copyOf(dataBytes, dataLength);
+            key.dataLength = dataLength;
+            key.delimiterBytes = delimiterLength == 0 ? null : Arrays.copyOf(delimiterBytes, delimiterLength);
+            key.delimiterLength = delimiterLength;
+            key.length = length;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && dataLength == other.dataLength
+                    && delimiterLength == other.delimiterLength
+                    && WritableComparator.compareBytes(dataBytes, 0, dataLength, other.dataBytes, 0, dataLength) == 0
+                    && (delimiterLength == 0 || WritableComparator.compareBytes(
+                    delimiterBytes, 0, delimiterLength, other.delimiterBytes, 0, delimiterLength) == 0);
+        }
+    }
+
+    /**
+     * 已编码的切分结果，所有切分结果依次拼接在bytes中，ends记录每个切分结果的结束位置
+     */
+    static final class Tokens {
+        private final byte[] bytes;
+        private final int[] ends;
+
+        private Tokens(byte[] bytes, int[] ends) {
+            this.bytes = bytes;
+            this.ends = ends;
+        }
+
+        int size() {
+            return ends.length;
+        }
+
+        /**
+         * 将第i个切分结果写入out
+         *
+         * @param i
+         * @param out
+         */
+        void get(int i, Text out) {
+            int start = i == 0 ? 0 : ends[i - 1];
+            out.set(bytes, start, ends[i] - start);
+        }
+    }
+}
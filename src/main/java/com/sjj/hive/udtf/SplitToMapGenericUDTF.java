@@ -0,0 +1,213 @@
+package com.sjj.hive.udtf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory.STRING;
+
+/**
+ * 将"k1=v1;k2=v2"形式的字符串一次扫描展开为多行(key, value)
+ * 分隔符均按字面量在UTF-8字节上匹配，可选的key白名单在字节上直接比较，被过滤的key不会创建任何对象
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "split_to_map_udtf",
+        value = "_FUNC_(data,pair_delimiter,kv_delimiter[,keys]) - Splits data into key/value pairs "
+                + "and returns one (key, value) row per pair, keeping only the keys in the optional array keys",
+        extended = "Example:\n"
+                + "  > SELECT name, k, v FROM table LATERAL VIEW _FUNC_(data,';','=') temp_table AS k, v;\n"
+                + "  > SELECT name, k, v FROM table LATERAL VIEW _FUNC_(data,';','=',array('k1','k2')) temp_table AS k, v;"
+)
+@SuppressWarnings("deprecation")
+public class SplitToMapGenericUDTF extends GenericUDTF {
+    /**
+     * 输入参数对象检查器
+     */
+    private transient StringObjectInspector[] inputOIs;
+
+    /**
+     * 函数返回的结果
+     */
+    private transient Object forwardObj[] = new Object[2];
+
+    /**
+     * 复用的输出对象
+     */
+    private transient Text outKey = new Text();
+    private transient Text outValue = new Text();
+
+    /**
+     * 按键值对分隔符切分的切分器
+     */
+    private transient DelimiterResolver.LiteralTokenizer pairTokenizer;
+    /**
+     * 键值分隔符
+     */
+    private transient byte[] kvDelimiter = new byte[8];
+    private transient int kvDelimiterLength;
+    private transient boolean constantDelimiters;
+
+    /**
+     * key白名单，为null时不过滤
+     */
+    private transient ByteKeySet keys;
+
+    /**
+     * 初始化
+     *
+     * @param argOIs
+     * @return
+     * @throws UDFArgumentException
+     */
+    @Override
+    public StructObjectInspector initialize(ObjectInspector[] argOIs) throws UDFArgumentException {
+        if (argOIs.length != 3 && argOIs.length != 4) {
+            throw new UDFArgumentException("The split_to_map_udtf takes three or four arguments.");
+        }
+        inputOIs = new StringObjectInspector[3];
+        for (int i = 0; i < 3; i++) {
+            if (!argOIs[i].getCategory().equals(ObjectInspector.Category.PRIMITIVE)
+                    || !((PrimitiveObjectInspector) argOIs[i]).getPrimitiveCategory().equals(STRING)) {
+                throw new UDFArgumentException(
+                        "The split_to_map_udtf takes only string types, got " + argOIs[i].getTypeName());
+            }
+            inputOIs[i] = (StringObjectInspector) argOIs[i];
+        }
+        pairTokenizer = new DelimiterResolver.LiteralTokenizer();
+        // 分隔符均为常量时，在初始化阶段确定
+        constantDelimiters = argOIs[1] instanceof ConstantObjectInspector
+                && argOIs[2] instanceof ConstantObjectInspector;
+        if (constantDelimiters) {
+            String pairDelimiter = SplitExplodeGenericUDTF.getConstantString(argOIs[1]);
+            String kvDelimiterStr = SplitExplodeGenericUDTF.getConstantString(argOIs[2]);
+            if (null == pairDelimiter || null == kvDelimiterStr
+                    || pairDelimiter.isEmpty() || kvDelimiterStr.isEmpty()) {
+                throw new UDFArgumentException("The delimiters of split_to_map_udtf must not be empty.");
+            }
+            pairTokenizer.setDelimiter(new Text(pairDelimiter));
+            setKvDelimiter(new Text(kvDelimiterStr));
+        }
+        if (argOIs.length == 4) {
+            keys = new ByteKeySet(getConstantKeys(argOIs[3]));
+        }
+
+        ArrayList<String> fname = new ArrayList<>();
+        ArrayList<ObjectInspector> foi = new ArrayList<>();
+        fname.add("key");
+        fname.add("value");
+        foi.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+        foi.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+        // 函数出参类型
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+    }
+
+    /**
+     * 获取常量的key白名单
+     *
+     * @param oi
+     * @return
+     * @throws UDFArgumentException
+     */
+    private static List<String> getConstantKeys(ObjectInspector oi) throws UDFArgumentException {
+        if (!(oi instanceof ConstantObjectInspector) || oi.getCategory() != ObjectInspector.Category.LIST
+                || ((ListObjectInspector) oi).getListElementObjectInspector().getCategory() != ObjectInspector.Category.PRIMITIVE) {
+            throw new UDFArgumentException(
+                    "The fourth argument of split_to_map_udtf must be a constant array of strings, got " + oi.getTypeName());
+        }
+        PrimitiveObjectInspector elementOI =
+                (PrimitiveObjectInspector) ((ListObjectInspector) oi).getListElementObjectInspector();
+        Object value = ((ConstantObjectInspector) oi).getWritableConstantValue();
+        List<String> keys = new ArrayList<>();
+        if (null != value) {
+            for (Object element : (List<?>) value) {
+                keys.add(null == element ? null : PrimitiveObjectInspectorUtils.getString(element, elementOI));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 设置键值分隔符，复用已有的字节数组
+     *
+     * @param delimiter
+     */
+    private void setKvDelimiter(Text delimiter) {
+        kvDelimiterLength = delimiter.getLength();
+        if (kvDelimiter.length < kvDelimiterLength) {
+            kvDelimiter = new byte[kvDelimiterLength];
+        }
+        System.arraycopy(delimiter.getBytes(), 0, kvDelimiter, 0, kvDelimiterLength);
+    }
+
+    /**
+     * 实现具体的处理逻辑
+     *
+     * @param args
+     * @throws HiveException
+     */
+    @Override
+    public void process(Object[] args) throws HiveException {
+        if (null == args[0] || null == args[1] || null == args[2]) {
+            return;
+        }
+        if (!constantDelimiters) {
+            Text pairDelimiter = inputOIs[1].getPrimitiveWritableObject(args[1]);
+            Text kvDelimiterText = inputOIs[2].getPrimitiveWritableObject(args[2]);
+            if (pairDelimiter.getLength() == 0 || kvDelimiterText.getLength() == 0) {
+                throw new HiveException("The delimiters of split_to_map_udtf must not be empty.");
+            }
+            pairTokenizer.setDelimiter(pairDelimiter);
+            setKvDelimiter(kvDelimiterText);
+        }
+
+        pairTokenizer.reset(inputOIs[0].getPrimitiveWritableObject(args[0]));
+        while (pairTokenizer.next()) {
+            byte[] bytes = pairTokenizer.bytes();
+            int start = pairTokenizer.tokenStart();
+            int end = pairTokenizer.tokenEnd();
+            // 跳过空的键值对
+            if (start == end) {
+                continue;
+            }
+            // 第一个键值分隔符之前为key，之后的内容均为value；没有键值分隔符时value为null
+            int index = DelimiterResolver.indexOf(bytes, start, end, kvDelimiter, kvDelimiterLength);
+            int keyEnd = index < 0 ? end : index;
+            if (null != keys && !keys.contains(bytes, start, keyEnd)) {
+                continue;
+            }
+            outKey.set(bytes, start, keyEnd - start);
+            forwardObj[0] = outKey;
+            if (index < 0) {
+                forwardObj[1] = null;
+            } else {
+                int valueStart = index + kvDelimiterLength;
+                outValue.set(bytes, valueStart, end - valueStart);
+                forwardObj[1] = outValue;
+            }
+            // 输出计算结果
+            forward(forwardObj);
+        }
+    }
+
+    /**
+     * 计算结束后调用该方法
+     *
+     * @throws HiveException
+     */
+    @Override
+    public void close() throws HiveException {
+    }
+}
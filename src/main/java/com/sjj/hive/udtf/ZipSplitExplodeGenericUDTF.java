@@ -0,0 +1,206 @@
+package com.sjj.hive.udtf;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+
+import static org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory.STRING;
+
+/**
+ * 使用同一个分隔符同时切分多个字段，并按位置逐行输出，相当于对多个字段分别split后再按下标拼接
+ * 所有字段在一次扫描中同步推进，不需要多个LATERAL VIEW及posexplode关联
+ *
+ * @author Jiajun Song
+ * @version 1.0.0
+ * @date 2024/5/7
+ */
+@Description(
+        name = "zip_split_explode_udtf",
+        value = "_FUNC_(delimiter,policy,data1,data2,...) - Splits every data column around delimiter "
+                + "and returns one row per position, policy decides how columns with different lengths are handled: "
+                + "'pad' fills the shorter columns with null, 'truncate' stops at the shortest column, 'fail' throws an error",
+        extended = "Example:\n"
+                + "  > SELECT name, id, ts FROM table LATERAL VIEW _FUNC_(',','pad',ids,tss) temp_table AS id, ts;"
+)
+@SuppressWarnings("deprecation")
+public class ZipSplitExplodeGenericUDTF extends GenericUDTF {
+    /**
+     * 字段长度不一致时的处理策略
+     */
+    enum Policy {
+        /**
+         * 较短的字段用null补齐
+         */
+        PAD,
+        /**
+         * 以最短的字段为准
+         */
+        TRUNCATE,
+        /**
+         * 抛出异常
+         */
+        FAIL;
+
+        static Policy of(String name) throws UDFArgumentException {
+            if (null != name) {
+                switch (name.trim().toLowerCase()) {
+                    case "pad":
+                        return PAD;
+                    case "truncate":
+                        return TRUNCATE;
+                    case "fail":
+                        return FAIL;
+                    default:
+                        break;
+                }
+            }
+            throw new UDFArgumentException(
+                    "The policy of zip_split_explode_udtf must be 'pad', 'truncate' or 'fail', got " + name);
+        }
+    }
+
+    /**
+     * 需要切分的字段数量
+     */
+    private transient int columns;
+    /**
+     * 输入参数对象检查器
+     */
+    private transient StringObjectInspector delimiterOI;
+    private transient StringObjectInspector[] dataOIs;
+    private transient Policy policy;
+
+    /**
+     * 每个字段对应一个切分器，各自保存切分进度
+     */
+    private transient DelimiterResolver[] delimiterResolvers;
+    private transient DelimiterResolver.Tokenizer[] tokenizers;
+
+    /**
+     * 函数返回的结果及复用的输出对象
+     */
+    private transient Object[] forwardObj;
+    private transient Text[] outTexts;
+
+    /**
+     * 初始化
+     *
+     * @param argOIs
+     * @return
+     * @throws UDFArgumentException
+     */
+    @Override
+    public StructObjectInspector initialize(ObjectInspector[] argOIs) throws UDFArgumentException {
+        if (argOIs.length < 3) {
+            throw new UDFArgumentException("The zip_split_explode_udtf takes at least three arguments.");
+        }
+        for (ObjectInspector argOI : argOIs) {
+            if (!argOI.getCategory().equals(ObjectInspector.Category.PRIMITIVE)
+                    || !((PrimitiveObjectInspector) argOI).getPrimitiveCategory().equals(STRING)) {
+                throw new UDFArgumentException(
+                        "The zip_split_explode_udtf takes only string types, got " + argOI.getTypeName());
+            }
+        }
+        if (!(argOIs[1] instanceof ConstantObjectInspector)) {
+            throw new UDFArgumentException("The policy of zip_split_explode_udtf must be a constant.");
+        }
+        policy = Policy.of(SplitExplodeGenericUDTF.getConstantString(argOIs[1]));
+
+        columns = argOIs.length - 2;
+        delimiterOI = (StringObjectInspector) argOIs[0];
+        dataOIs = new StringObjectInspector[columns];
+        // 分隔符为常量时，在初始化阶段确定切分器
+        String constantDelimiter = null;
+        if (argOIs[0] instanceof ConstantObjectInspector) {
+            constantDelimiter = SplitExplodeGenericUDTF.getConstantString(argOIs[0]);
+        }
+        delimiterResolvers = new DelimiterResolver[columns];
+        tokenizers = new DelimiterResolver.Tokenizer[columns];
+        forwardObj = new Object[columns];
+        outTexts = new Text[columns];
+
+        ArrayList<String> fname = new ArrayList<>();
+        ArrayList<ObjectInspector> foi = new ArrayList<>();
+        for (int i = 0; i < columns; i++) {
+            dataOIs[i] = (StringObjectInspector) argOIs[i + 2];
+            delimiterResolvers[i] = new DelimiterResolver(DelimiterResolver.Mode.REGEX, constantDelimiter);
+            outTexts[i] = new Text();
+            fname.add("col" + (i + 1));
+            foi.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+        }
+        // 函数出参类型
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fname, foi);
+    }
+
+    /**
+     * 实现具体的处理逻辑
+     *
+     * @param args
+     * @throws HiveException
+     */
+    @Override
+    public void process(Object[] args) throws HiveException {
+        if (null == args[0]) {
+            return;
+        }
+        Text delimiterText = delimiterResolvers[0].isConstant()
+                ? null : delimiterOI.getPrimitiveWritableObject(args[0]);
+        // 字段为null时视为没有切分结果
+        for (int i = 0; i < columns; i++) {
+            Object data = args[i + 2];
+            if (null == data) {
+                tokenizers[i] = null;
+            } else {
+                tokenizers[i] = delimiterResolvers[i].resolve(delimiterText);
+                tokenizers[i].reset(dataOIs[i].getPrimitiveWritableObject(data));
+            }
+        }
+
+        int pos = 0;
+        while (true) {
+            int present = 0;
+            for (int i = 0; i < columns; i++) {
+                if (null != tokenizers[i] && tokenizers[i].next()) {
+                    tokenizers[i].current(outTexts[i]);
+                    forwardObj[i] = outTexts[i];
+                    present++;
+                } else {
+                    // 已经切分完的字段不再继续推进
+                    tokenizers[i] = null;
+                    forwardObj[i] = null;
+                }
+            }
+            if (present == 0) {
+                return;
+            }
+            if (present < columns) {
+                if (policy == Policy.TRUNCATE) {
+                    return;
+                }
+                if (policy == Policy.FAIL) {
+                    throw new HiveException("The columns of zip_split_explode_udtf have different lengths at position "
+                            + pos + ", " + present + " of " + columns + " columns have elements.");
+                }
+            }
+            // 输出计算结果
+            forward(forwardObj);
+            pos++;
+        }
+    }
+
+    /**
+     * 计算结束后调用该方法
+     *
+     * @throws HiveException
+     */
+    @Override
+    public void close() throws HiveException {
+    }
+}